@@ -4,6 +4,8 @@
  */
 package core;
 
+import java.util.BitSet;
+
 import routing.MessageRouter;
 
 /**
@@ -27,6 +29,15 @@ public abstract class Connection {
 	*/
 	private boolean done;
 	
+	/** Bytes of routing control data (e.g. summary vectors) sent */
+	private int controlBytes;
+	/** Time when the control data has been sent */
+	private double controlDoneTime;
+	
+	/** Messages refused as old by the other node, for both directions
+	 * (index 0: offered by the initiator, 1: offered by the other node) */
+	private RefusedMessages[] refused;
+	
 	/**
 	 * Creates a new connection between nodes and sets the connection
 	 * state to "up".
@@ -147,11 +158,32 @@ public abstract class Connection {
 
 	/**
 	 * Returns true if the connection is ready to transfer a message (connection
-	 * is up and there is no message being transferred).
+	 * is up and there is no message or control data being transferred).
 	 * @return true if the connection is ready to transfer a message
 	 */
 	public boolean isReadyForTransfer() {
-		return this.isUp && this.msgOnFly == null; 
+		return this.isUp && this.msgOnFly == null && 
+			this.controlDoneTime <= SimClock.getTime(); 
+	}
+
+	/**
+	 * Sends routing control data (e.g. a summary vector) over the connection.
+	 * The connection isn't ready for message transfers until the control 
+	 * data, and any control data sent before it, has been transferred.
+	 * @param bytes Size of the control data
+	 */
+	public void addControlBytes(int bytes) {
+		double start = Math.max(this.controlDoneTime, SimClock.getTime());
+		this.controlDoneTime = start + (1.0 * bytes) / getSpeed();
+		this.controlBytes += bytes;
+	}
+
+	/**
+	 * Returns the amount of routing control data sent over the connection
+	 * @return The amount of control data (bytes)
+	 */
+	public int getControlBytes() {
+		return this.controlBytes;
 	}
 
 	/**
@@ -234,5 +266,107 @@ public abstract class Connection {
 		this.done = done;
 	}
 
+	/**
+	 * Remembers that the other node refused a message offered by the given
+	 * node as already seen (see {@link MessageRouter#DENIED_OLD}).
+	 * Messages are identified by their unique ID so a replicate of a 
+	 * refused message isn't considered refused.
+	 * @param from The node that offered the message
+	 * @param m The refused message
+	 */
+	public void setRefused(DTNHost from, Message m) {
+		getRefusedMessages(from).add(m.getUniqueId());
+	}
+
+	/**
+	 * Returns true if the other node has refused the message when it was
+	 * offered by the given node (and the refusals haven't been cleared since)
+	 * @param from The node offering the message
+	 * @param m The message
+	 * @return true if the message has been refused
+	 */
+	public boolean isRefused(DTNHost from, Message m) {
+		if (this.refused == null) {
+			return false;
+		}
+		RefusedMessages r = this.refused[isInitiator(from) ? 0 : 1];
+		return r != null && r.contains(m.getUniqueId());
+	}
+
+	/**
+	 * Checks that the refusals of messages offered by the given node are 
+	 * still valid. The stamp must change every time a refused message could
+	 * be accepted again; if it differs from the stamp given the previous
+	 * time, the refusals are forgotten.
+	 * @param from The node offering the messages
+	 * @param stamp Stamp of the state the refusals depend on
+	 */
+	public void validateRefusals(DTNHost from, long stamp) {
+		RefusedMessages r = getRefusedMessages(from);
+		if (r.stamp != stamp) {
+			r.clear();
+			r.stamp = stamp;
+		}
+	}
+
+	/**
+	 * Returns the refused messages of the messages offered by the given node
+	 * @param from The node offering the messages
+	 * @return The refused messages (created if they didn't exist yet)
+	 */
+	private RefusedMessages getRefusedMessages(DTNHost from) {
+		int i = isInitiator(from) ? 0 : 1;
+		if (this.refused == null) {
+			this.refused = new RefusedMessages[2];
+		}
+		if (this.refused[i] == null) {
+			this.refused[i] = new RefusedMessages();
+		}
+		return this.refused[i];
+	}
+
+	/**
+	 * Forgets the refused messages of both directions
+	 */
+	public void clearRefusals() {
+		this.refused = null;
+	}
+
+	/**
+	 * Set of unique message IDs. The IDs are stored in a bit set relative
+	 * to the smallest ID seen so that the set stays small even when the
+	 * IDs are large.
+	 */
+	private static class RefusedMessages {
+		private BitSet ids = new BitSet();
+		private int base = -1;
+		private long stamp;
+
+		private void add(int id) {
+			if (base < 0) {
+				base = id;
+			}
+			else if (id < base) {
+				/* move the existing IDs to the new base */
+				BitSet moved = new BitSet();
+				for (int i = ids.nextSetBit(0); i >= 0; i = ids.nextSetBit(i+1)) {
+					moved.set(i + base - id);
+				}
+				ids = moved;
+				base = id;
+			}
+			ids.set(id - base);
+		}
+
+		private boolean contains(int id) {
+			return base >= 0 && id >= base && ids.get(id - base);
+		}
+
+		private void clear() {
+			ids.clear();
+			base = -1;
+		}
+	}
+
 }
 
@@ -6,6 +6,8 @@ package core;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 
 import movement.MovementModel;
@@ -32,11 +34,31 @@ public class DTNHost implements Comparable<DTNHost> {
 	private List<MessageListener> msgListeners;
 	private List<MovementListener> movListeners;
 	private List<NetworkInterface> net;
+	/** unmodifiable view of the connections of all the interfaces
+	 * (or null if it must be rebuilt) */
+	private List<Connection> connections;
+	/** the first connection (in {@link #getConnections()} order) to each 
+	 * connected host */
+	private HashMap<DTNHost, Connection> connectionsByHost;
 	private ModuleCommunicationBus comBus;
 	
 	private int ncap;
 	private int ccap;
 	
+	/** no part of the move is left for {@link #finishMove()} */
+	private static final int MOVE_DONE = 0;
+	/** the whole move is left for {@link #finishMove()} */
+	private static final int MOVE_FROM_START = 1;
+	/** the move continues from a waypoint in {@link #finishMove()} */
+	private static final int MOVE_FROM_WAYPOINT = 2;
+	/** what is left of the move started with {@link #moveConcurrently} */
+	private int pendingMove;
+	/** time increment (from start) or movement (from waypoint) left */
+	private double pendingAmount;
+	/** destinations and speeds set during {@link #moveConcurrently} whose
+	 * movement listeners have not been informed yet */
+	private List<Tuple<Coord, Double>> pendingDestinations;
+	
 	static {
 		DTNSim.registerForReset(DTNHost.class.getCanonicalName());
 		reset();
@@ -61,6 +83,7 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.address = getNextAddress();
 		this.name = groupId+address;
 		this.net = new ArrayList<NetworkInterface>();
+		this.connectionsByHost = new HashMap<DTNHost, Connection>();
 		for (NetworkInterface i : interf) {
 			NetworkInterface ni = i.replicate();
 			ni.setHost(this);
@@ -165,17 +188,93 @@ public class DTNHost implements Comparable<DTNHost> {
 	}
 
 	/**
-	 * Returns a copy of the list of connections this host has with other hosts
-	 * @return a copy of the list of connections this host has with other hosts
+	 * Returns an unmodifiable list of the connections this host has with
+	 * other hosts. The list is a cached view that is up to date until the 
+	 * connections change; for hosts with a single network interface it is
+	 * a live view of the interface's connections.
+	 * @return a list of connections this host has with other hosts
 	 */
 	public List<Connection> getConnections() {
-		List<Connection> lc = new ArrayList<Connection>();
-
-		for (NetworkInterface i : net) {
-			lc.addAll(i.getConnections());
+		if (this.connections != null) {
+			return this.connections;
+		}
+		
+		if (net.size() == 1) {
+			this.connections = 
+				Collections.unmodifiableList(net.get(0).getConnections());
+		}
+		else {
+			List<Connection> lc = new ArrayList<Connection>();
+			for (NetworkInterface i : net) {
+				lc.addAll(i.getConnections());
+			}
+			this.connections = Collections.unmodifiableList(lc);
 		}
 
-		return lc;
+		return this.connections;
+	}
+	
+	/**
+	 * Returns the connection this host has with another host. If there are 
+	 * several connections (through different interfaces), the first one in 
+	 * the {@link #getConnections()} list is returned.
+	 * @param other The other host
+	 * @return The connection or null if the hosts aren't connected
+	 */
+	public Connection getConnection(DTNHost other) {
+		return this.connectionsByHost.get(other);
+	}
+	
+	/**
+	 * Informs the host that a connection was added to the connections of
+	 * one of its interfaces
+	 * @param con The added connection
+	 */
+	void connectionAdded(Connection con) {
+		connectionsChanged();
+		DTNHost other = con.getOtherNode(this);
+		if (this.connectionsByHost.containsKey(other)) {
+			updateConnectionTo(other); // the new one may come first
+		}
+		else {
+			this.connectionsByHost.put(other, con);
+		}
+	}
+	
+	/**
+	 * Informs the host that a connection was removed from the connections
+	 * of one of its interfaces
+	 * @param con The removed connection
+	 */
+	void connectionRemoved(Connection con) {
+		connectionsChanged();
+		DTNHost other = con.getOtherNode(this);
+		if (this.connectionsByHost.get(other) == con) {
+			updateConnectionTo(other);
+		}
+	}
+	
+	/**
+	 * Invalidates the cached connection list (if it's not a live view)
+	 */
+	private void connectionsChanged() {
+		if (net.size() != 1) {
+			this.connections = null; // single interface's view is live
+		}
+	}
+	
+	/**
+	 * Finds the first connection to another host from the connection list
+	 * @param other The other host
+	 */
+	private void updateConnectionTo(DTNHost other) {
+		this.connectionsByHost.remove(other);
+		for (Connection c : getConnections()) {
+			if (c.getOtherNode(this) == other) {
+				this.connectionsByHost.put(other, c);
+				return;
+			}
+		}
 	}
 
 	/**
@@ -337,34 +436,90 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.router.update();
 	}
 
+	/**
+	 * Returns true if updating this host now wouldn't change anything,
+	 * provided that no host has moved or changed its activeness since all
+	 * the hosts were updated. That is the case if the host is inactive, or
+	 * if all its interfaces (see {@link NetworkInterface#isIdle()}) and its
+	 * router (see {@link MessageRouter#isIdle()}) are idle.
+	 * @return true if the host is idle
+	 */
+	public boolean isIdle() {
+		if (!isActive()) {
+			return true; // update doesn't do anything
+		}
+		for (NetworkInterface i : net) {
+			if (!i.isIdle()) {
+				return false;
+			}
+		}
+		return this.router.isIdle();
+	}
+
 	/**
 	 * Moves the node towards the next waypoint or waits if it is
 	 * not time to move yet
 	 * @param timeIncrement How long time the node moves
 	 */
 	public void move(double timeIncrement) {		
-		double possibleMovement;
-		double distance;
-		double dx, dy;
-
-		if (!isActive() || SimClock.getTime() < this.nextTimeToMove) {
+		if (!isReadyToMove()) {
 			return; 
 		}
+		moveFromStart(timeIncrement);
+	}
+	
+	/**
+	 * Returns true if the node is active and it is time for it to move
+	 * @return true if the node should move now
+	 */
+	public boolean isReadyToMove() {
+		return isActive() && SimClock.getTime() >= this.nextTimeToMove;
+	}
+	
+	/**
+	 * Moves the node for the given time, starting with a new waypoint if 
+	 * the node doesn't have a destination.
+	 * @param timeIncrement How long time the node moves
+	 */
+	private void moveFromStart(double timeIncrement) {
 		if (this.destination == null) {
 			if (!setNextWaypoint()) {
 				return;
 			}
 		}
 
-		possibleMovement = timeIncrement * speed;
+		moveFor(timeIncrement * speed);
+	}
+	
+	/**
+	 * Moves the node towards the next waypoint(s) for the given distance
+	 * @param possibleMovement How long distance the node can move
+	 */
+	private void moveFor(double possibleMovement) {
+		moveAlongPath(possibleMovement, false);
+	}
+	
+	/**
+	 * Moves the node towards the next waypoint(s) for the given distance.
+	 * @param possibleMovement How long distance the node can move
+	 * @param pathOnly If true, only the waypoints of the current path are
+	 * used (see {@link #setNextWaypointOnPath()}); otherwise new paths are
+	 * asked from the movement model (see {@link #setNextWaypoint()})
+	 * @return The distance that was left when there were no more waypoints
+	 * or -1 if the node moved the whole distance
+	 */
+	private double moveAlongPath(double possibleMovement, boolean pathOnly) {
+		double distance;
+		double dx, dy;
+		
 		distance = this.location.distance(this.destination);
 
 		while (possibleMovement >= distance) {
 			// node can move past its next destination
 			this.location.setLocation(this.destination); // snap to destination
 			possibleMovement -= distance;
-			if (!setNextWaypoint()) { // get a new waypoint
-				return; // no more waypoints left
+			if (pathOnly ? !setNextWaypointOnPath() : !setNextWaypoint()) {
+				return possibleMovement; // no more waypoints left
 			}
 			distance = this.location.distance(this.destination);
 		}
@@ -375,7 +530,66 @@ public class DTNHost implements Comparable<DTNHost> {
 		dy = (possibleMovement/distance) * (this.destination.getY() -
 				this.location.getY());
 		this.location.translate(dx, dy);
+		return -1;
 	}	
+	
+	/**
+	 * Moves the node like {@link #move(double)} but only as far as the 
+	 * node's current path goes. Parts of the move that need the movement 
+	 * model (new paths or waiting times) are left for {@link #finishMove()}
+	 * and movement listeners are informed only there, so this method 
+	 * modifies nothing but this host and it can be called for different 
+	 * hosts concurrently. The caller must check {@link #isReadyToMove()}
+	 * first and call {@link #finishMove()} after this.
+	 * @param timeIncrement How long time the node moves
+	 */
+	public void moveConcurrently(double timeIncrement) {
+		if (this.destination == null) {
+			this.pendingMove = MOVE_FROM_START;
+			this.pendingAmount = timeIncrement;
+			return;
+		}
+		
+		double left = moveAlongPath(timeIncrement * speed, true);
+		if (left >= 0) {
+			/* rest of the move needs the movement model */
+			this.pendingMove = MOVE_FROM_WAYPOINT;
+			this.pendingAmount = left;
+		}
+		else {
+			this.pendingMove = MOVE_DONE;
+		}
+	}
+	
+	/**
+	 * Finishes a move started with {@link #moveConcurrently(double)}: 
+	 * informs the movement listeners about the new destinations and does
+	 * the part of the move that needed the movement model. The result is
+	 * the same as if the whole move had been done with 
+	 * {@link #move(double)}.
+	 */
+	public void finishMove() {
+		if (this.pendingDestinations != null) {
+			for (Tuple<Coord, Double> t : this.pendingDestinations) {
+				for (MovementListener l : this.movListeners) {
+					l.newDestination(this, t.getKey(), t.getValue());
+				}
+			}
+			this.pendingDestinations.clear();
+		}
+		
+		switch (this.pendingMove) {
+		case MOVE_FROM_START:
+			moveFromStart(this.pendingAmount);
+			break;
+		case MOVE_FROM_WAYPOINT:
+			if (setNextWaypoint()) {
+				moveFor(this.pendingAmount);
+			}
+			break;
+		}
+		this.pendingMove = MOVE_DONE;
+	}
 
 	/**
 	 * Sets the next destination and speed to correspond the next waypoint
@@ -406,6 +620,33 @@ public class DTNHost implements Comparable<DTNHost> {
 		return true;
 	}
 
+	/**
+	 * Sets the next destination and speed to correspond the next waypoint
+	 * on the current path without asking the movement model for a new 
+	 * path. Movement listeners are informed about the new destination in
+	 * {@link #finishMove()}.
+	 * @return True if the current path had a next waypoint
+	 */
+	private boolean setNextWaypointOnPath() {
+		if (path == null || !path.hasNext()) {
+			return false;
+		}
+		
+		this.destination = path.getNextWaypoint();
+		this.speed = path.getSpeed();
+		
+		if (this.movListeners != null && this.movListeners.size() > 0) {
+			if (this.pendingDestinations == null) {
+				this.pendingDestinations = 
+					new ArrayList<Tuple<Coord, Double>>();
+			}
+			this.pendingDestinations.add(
+					new Tuple<Coord, Double>(this.destination, this.speed));
+		}
+		
+		return true;
+	}
+
 	/**
 	 * Sends a message from this host to another host
 	 * @param id Identifier of the message
@@ -0,0 +1,260 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Hash map with primitive int keys. The entries are kept in two arrays
+ * using open addressing with linear probing, so keys are not boxed and
+ * no entry objects are created. Null values are not allowed. Iteration
+ * order is the order of the slots, i.e., arbitrary.
+ */
+public class IntMap<V> {
+	/** Initial number of slots (must be a power of two) */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** Keys of the slots */
+	private int[] keys;
+	/** Values of the slots; null for empty slots */
+	private Object[] values;
+	/** Number of entries */
+	private int size;
+	/** Number of slots minus one */
+	private int mask;
+	/** Value view of the map */
+	private Collection<V> valueView;
+
+	/**
+	 * Creates a new, empty, map
+	 */
+	public IntMap() {
+		this.keys = new int[INITIAL_CAPACITY];
+		this.values = new Object[INITIAL_CAPACITY];
+		this.mask = INITIAL_CAPACITY - 1;
+		this.size = 0;
+		this.valueView = new ValueView();
+	}
+
+	/**
+	 * Returns the slot where probing for a key starts
+	 */
+	private int slot(int key) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Returns the slot of a key or -1 if the key is not in the map
+	 */
+	private int find(int key) {
+		for (int i = slot(key); values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the value of a key
+	 * @param key The key
+	 * @return The value or null if the key is not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int i = find(key);
+		return i < 0 ? null : (V)values[i];
+	}
+
+	/**
+	 * Returns true if the map has a value for the key
+	 * @param key The key
+	 * @return true if the key is in the map
+	 */
+	public boolean containsKey(int key) {
+		return find(key) >= 0;
+	}
+
+	/**
+	 * Sets the value of a key
+	 * @param key The key
+	 * @param value The value (not null)
+	 * @return The previous value of the key or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Null value for key " + key);
+		}
+
+		int i = slot(key);
+		for (; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				V old = (V)values[i];
+				values[i] = value;
+				return old;
+			}
+		}
+
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		if (size * 2 > values.length) {
+			resize(values.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * Removes a key from the map
+	 * @param key The key
+	 * @return The value of the removed key or null if the key wasn't in
+	 * the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int i = find(key);
+		if (i < 0) {
+			return null;
+		}
+		V old = (V)values[i];
+		size--;
+
+		/* move back the following entries that were probed past slot i */
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (values[j] == null) {
+				break;
+			}
+			int home = slot(keys[j]);
+			if (((j - home) & mask) >= ((j - i) & mask)) {
+				keys[i] = keys[j];
+				values[i] = values[j];
+				i = j;
+			}
+		}
+		values[i] = null;
+
+		return old;
+	}
+
+	/**
+	 * Returns the number of entries in the map
+	 * @return The number of entries
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns true if the map has no entries
+	 * @return true if the map is empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes all entries from the map
+	 */
+	public void clear() {
+		for (int i=0; i<values.length; i++) {
+			values[i] = null;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Returns the keys of the map
+	 * @return A new array of the keys
+	 */
+	public int[] keys() {
+		int[] result = new int[size];
+		int n = 0;
+		for (int i=0; i<values.length; i++) {
+			if (values[i] != null) {
+				result[n++] = keys[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a live view of the values of the map. The view can't be
+	 * modified.
+	 * @return The values
+	 */
+	public Collection<V> values() {
+		return valueView;
+	}
+
+	/**
+	 * Moves the entries to a new slot array
+	 * @param capacity Number of slots in the new array (power of two)
+	 */
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new int[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+
+		for (int i=0; i<oldValues.length; i++) {
+			if (oldValues[i] != null) {
+				int j = slot(oldKeys[i]);
+				while (values[j] != null) {
+					j = (j + 1) & mask;
+				}
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Collection view of the values in slot order
+	 */
+	private class ValueView extends AbstractCollection<V> {
+		@Override
+		public Iterator<V> iterator() {
+			return new Iterator<V>() {
+				private Object[] slots = values;
+				private int next = advance(0);
+
+				private int advance(int i) {
+					while (i < slots.length && slots[i] == null) {
+						i++;
+					}
+					return i;
+				}
+				public boolean hasNext() {
+					return next < slots.length;
+				}
+				@SuppressWarnings("unchecked")
+				public V next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					V v = (V)slots[next];
+					next = advance(next + 1);
+					return v;
+				}
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
@@ -0,0 +1,223 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Compact set of int values. The values are split into chunks by their
+ * upper 16 bits and each chunk stores the lower 16 bits of its values
+ * either in a sorted char array or, once the chunk has more than
+ * {@link #MAX_ARRAY_SIZE} values, in a bitmap (as in "roaring" bitmaps).
+ * Densely numbered values, such as interned message IDs, take about two
+ * bytes each. Values can't be removed.
+ */
+public class IntSet {
+	/** Maximum number of values in an array chunk */
+	private static final int MAX_ARRAY_SIZE = 4096;
+	/** Number of longs in a bitmap chunk */
+	private static final int BITMAP_SIZE = (1 << 16) / 64;
+
+	/** The chunks ordered by their upper bits */
+	private Chunk[] chunks;
+	/** Number of chunks */
+	private int nrofChunks;
+	/** Number of values in the set */
+	private int size;
+
+	/**
+	 * Creates a new, empty, set
+	 */
+	public IntSet() {
+		this.chunks = new Chunk[1];
+		this.nrofChunks = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Adds a value to the set
+	 * @param value The value
+	 * @return true if the value was added, false if it was already in the set
+	 */
+	public boolean add(int value) {
+		int high = value >>> 16;
+		int i = findChunk(high);
+		if (i < 0) {
+			i = -i - 1;
+			if (nrofChunks == chunks.length) {
+				chunks = Arrays.copyOf(chunks, chunks.length * 2);
+			}
+			System.arraycopy(chunks, i, chunks, i + 1, nrofChunks - i);
+			chunks[i] = new Chunk(high);
+			nrofChunks++;
+		}
+
+		if (chunks[i].add((char)value)) {
+			size++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if the value is in the set
+	 * @param value The value
+	 * @return true if the set contains the value
+	 */
+	public boolean contains(int value) {
+		int i = findChunk(value >>> 16);
+		return i >= 0 && chunks[i].contains((char)value);
+	}
+
+	/**
+	 * Returns the number of values in the set
+	 * @return The number of values
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the values of the set in ascending order of their unsigned
+	 * presentation (i.e., negative values last)
+	 * @return A new array of the values
+	 */
+	public int[] toArray() {
+		int[] result = new int[size];
+		int n = 0;
+		for (int i=0; i<nrofChunks; i++) {
+			n = chunks[i].copyTo(result, n);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the index of the chunk of the given upper bits
+	 * @param high The upper bits
+	 * @return The index or (-(insertion point) - 1) if there's no such chunk
+	 */
+	private int findChunk(int high) {
+		/* values are usually added in ascending order */
+		if (nrofChunks > 0 && chunks[nrofChunks - 1].high == high) {
+			return nrofChunks - 1;
+		}
+		int lo = 0;
+		int hi = nrofChunks - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int c = chunks[mid].high;
+			if (c < high) {
+				lo = mid + 1;
+			}
+			else if (c > high) {
+				hi = mid - 1;
+			}
+			else {
+				return mid;
+			}
+		}
+		return -(lo + 1);
+	}
+
+	/**
+	 * Values that share the same upper 16 bits
+	 */
+	private static class Chunk {
+		/** The upper bits */
+		private int high;
+		/** Sorted lower bits of the values (null for a bitmap chunk) */
+		private char[] values;
+		/** Bitmap of the lower bits (null for an array chunk) */
+		private long[] bits;
+		/** Number of values in the chunk */
+		private int n;
+
+		private Chunk(int high) {
+			this.high = high;
+			this.values = new char[4];
+			this.n = 0;
+		}
+
+		private boolean contains(char low) {
+			if (bits != null) {
+				return (bits[low >>> 6] & (1L << low)) != 0;
+			}
+			return Arrays.binarySearch(values, 0, n, low) >= 0;
+		}
+
+		private boolean add(char low) {
+			if (bits != null) {
+				long mask = 1L << low;
+				if ((bits[low >>> 6] & mask) != 0) {
+					return false;
+				}
+				bits[low >>> 6] |= mask;
+				n++;
+				return true;
+			}
+
+			int i;
+			if (n == 0 || values[n - 1] < low) {
+				i = n; // appending to the end
+			}
+			else {
+				i = Arrays.binarySearch(values, 0, n, low);
+				if (i >= 0) {
+					return false;
+				}
+				i = -i - 1;
+			}
+
+			if (n == MAX_ARRAY_SIZE) {
+				toBitmap();
+				return add(low);
+			}
+			if (n == values.length) {
+				values = Arrays.copyOf(values,
+						Math.min(values.length * 2, MAX_ARRAY_SIZE));
+			}
+			System.arraycopy(values, i, values, i + 1, n - i);
+			values[i] = low;
+			n++;
+			return true;
+		}
+
+		/**
+		 * Converts an array chunk to a bitmap chunk
+		 */
+		private void toBitmap() {
+			bits = new long[BITMAP_SIZE];
+			for (int i=0; i<n; i++) {
+				bits[values[i] >>> 6] |= 1L << values[i];
+			}
+			values = null;
+		}
+
+		/**
+		 * Copies the full values of this chunk to an array
+		 * @param dest The array
+		 * @param pos Index of the first value in the array
+		 * @return Index after the last copied value
+		 */
+		private int copyTo(int[] dest, int pos) {
+			int base = high << 16;
+			if (bits == null) {
+				for (int i=0; i<n; i++) {
+					dest[pos++] = base | values[i];
+				}
+				return pos;
+			}
+			for (int w=0; w<bits.length; w++) {
+				long word = bits[w];
+				while (word != 0) {
+					int b = Long.numberOfTrailingZeros(word);
+					dest[pos++] = base | (w << 6 | b);
+					word &= word - 1;
+				}
+			}
+			return pos;
+		}
+	}
+}
@@ -22,6 +22,12 @@ public class Message implements Comparable<Message> {
 	private DTNHost to;
 	/** Identifier of the message */
 	private String id;
+	/** Interned key of the identifier (see {@link #getIdKey()}) */
+	private int idKey;
+	/** Keys of the interned message identifiers */
+	private static HashMap<String, Integer> idKeys;
+	/** Interned message identifiers in the order of their keys */
+	private static ArrayList<String> keyIds;
 	/** Size of the message (bytes) */
 	private int size;
 	/** List of nodes this message has passed */
@@ -41,7 +47,8 @@ public class Message implements Comparable<Message> {
 	 * Author: Akshay Kayastha, Khushveer Kaur, Dilip Yadav	
 	*/
 	private int copies;
-	private List<DTNHost> mto;
+	/** Recipients of the message (shared by replicates until changed) */
+	private Recipients mto;
 	
 	/** if a response to this message is required, this is the size of the 
 	 * response message (or 0 if no response is requested) */
@@ -73,9 +80,9 @@ public class Message implements Comparable<Message> {
 	public Message(DTNHost from, DTNHost to, String id, int size) {
 		this.from = from;
 		this.to = to;
-		this.mto = new ArrayList<DTNHost>();
-		mto.add(to);
+		this.mto = new Recipients(to);
 		this.id = id;
+		this.idKey = internId(id);
 		this.size = size;
 		this.path = new ArrayList<DTNHost>();
 		this.uniqueId = nextUniqueId;
@@ -96,8 +103,9 @@ public class Message implements Comparable<Message> {
 //	Constructor for multicasting
 	public Message(DTNHost from, List<DTNHost> mto, String id, int size) {
 		this.from = from;
-		this.mto = mto;
+		this.mto = new Recipients(mto);
 		this.id = id;
+		this.idKey = internId(id);
 		this.size = size;
 		this.path = new ArrayList<DTNHost>();
 		this.uniqueId = nextUniqueId;
@@ -123,12 +131,22 @@ public class Message implements Comparable<Message> {
 	}
 
 	/**
-	 * Returns the node this message is originally to
-	 * @return the node this message is originally to
+	 * Returns the nodes this message is to. The returned list can't be 
+	 * modified; see {@link #removeRecipient(DTNHost)}.
+	 * @return the nodes this message is to
 	 */
 	public List<DTNHost> getTo() {
 			return this.mto;
 	}
+	
+	/**
+	 * Removes a node from the recipients of this message. The recipients 
+	 * of the replicates of this message are not changed.
+	 * @param host The node to remove
+	 */
+	public void removeRecipient(DTNHost host) {
+		this.mto = this.mto.without(host);
+	}
 
 	/**
 	 * Returns the ID of the message
@@ -138,6 +156,53 @@ public class Message implements Comparable<Message> {
 		return this.id;
 	}
 	
+	/**
+	 * Returns the interned key of the ID of the message. Messages with the
+	 * same ID (e.g., replicates) have the same key, and different IDs have
+	 * different keys, so the key can be used instead of the ID in lookups.
+	 * @return The key of the message id
+	 */
+	public int getIdKey() {
+		return this.idKey;
+	}
+	
+	/**
+	 * Returns the interned key of a message ID
+	 * @param id The message ID
+	 * @return The key of the ID or -1 if no message has had that ID
+	 * @see #getIdKey()
+	 */
+	public static int getIdKey(String id) {
+		Integer key = idKeys.get(id);
+		return key != null ? key : -1;
+	}
+	
+	/**
+	 * Returns the message ID of an interned key
+	 * @param key The key
+	 * @return The message ID
+	 * @see #getIdKey()
+	 */
+	public static String getIdOfKey(int key) {
+		return keyIds.get(key);
+	}
+	
+	/**
+	 * Returns the key of a message ID, interning the ID if it doesn't 
+	 * have a key yet
+	 * @param id The message ID
+	 * @return The key of the ID
+	 */
+	private static int internId(String id) {
+		Integer key = idKeys.get(id);
+		if (key == null) {
+			key = keyIds.size();
+			idKeys.put(id, key);
+			keyIds.add(id);
+		}
+		return key;
+	}
+	
 	/**
 	 * Returns an ID that is unique per message instance 
 	 * (different for replicates too)
@@ -196,6 +261,19 @@ public class Message implements Comparable<Message> {
 	}
 	
 	
+	/**
+	 * Returns the simulation time when the initial TTL of this message has
+	 * fully elapsed. Ordering messages by this value orders them also by
+	 * their current TTL.
+	 * @return The expiry time or Double.MAX_VALUE if the TTL is infinite
+	 */
+	public double getExpiryTime() {
+		if (this.initTtl == INFINITE_TTL) {
+			return Double.MAX_VALUE;
+		}
+		return this.timeCreated + this.initTtl * 60.0;
+	}
+
 	/**
 	 * Sets the initial TTL (time-to-live) for this message. The initial
 	 * TTL is the TTL when the original message was created. The current TTL
@@ -377,6 +455,8 @@ public class Message implements Comparable<Message> {
 	 */
 	public static void reset() {
 		nextUniqueId = 0;
+		idKeys = new HashMap<String, Integer>();
+		keyIds = new ArrayList<String>();
 	}
 
 	/**
@@ -0,0 +1,26 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+/**
+ * Interface for classes that want to be informed about message copies
+ * being split between hosts by multi-copy routers. Report classes
+ * implementing this interface are registered automatically; if no listener
+ * is registered, the routers don't do any extra work for the events.
+ */
+public interface MessageCopyListener {
+
+	/**
+	 * Method is called when the copies of a message are divided between
+	 * two hosts during a transfer.
+	 * @param m The message whose copies were split (the sender's instance)
+	 * @param from Node the message is transferred from
+	 * @param to Node the message is transferred to
+	 * @param fromCopies Number of copies the sending node keeps
+	 * @param toCopies Number of copies the receiving node gets
+	 */
+	public void copiesSplit(Message m, DTNHost from, DTNHost to,
+			int fromCopies, int toCopies);
+}
@@ -6,8 +6,10 @@ package core;
 
 import interfaces.ConnectivityGrid;
 import interfaces.ConnectivityOptimizer;
+import interfaces.InterfaceVisitor;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Random;
 
@@ -48,6 +50,25 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	/** scanning interval, or 0.0 if n/a */
 	private double scanInterval;
 	private double lastScanTime;
+	/** interfaces found within range by {@link #scanNearInterfaces()} 
+	 * (the list is reused for every scan) */
+	private List<NetworkInterface> nearInterfaces = null;
+	/** are there pre-scan results that have not been used yet */
+	private boolean hasNearInterfaces = false;
+	/** visitor that tries to connect to the interfaces it visits */
+	private final InterfaceVisitor connector = new InterfaceVisitor() {
+		public void visit(NetworkInterface ni) {
+			connect(ni);
+		}
+	};
+	/** visitor that collects the visited interfaces that are within range */
+	private final InterfaceVisitor scanner = new InterfaceVisitor() {
+		public void visit(NetworkInterface ni) {
+			if (ni != NetworkInterface.this && isWithinRange(ni)) {
+				nearInterfaces.add(ni);
+			}
+		}
+	};
 
 
 	static {
@@ -199,6 +220,17 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return this.connections;
 	}
 	
+	/**
+	 * Returns true if updating this interface can't change anything as long
+	 * as no host moves or changes its activeness, i.e., the interface
+	 * doesn't have connections and it scans all the time (so all the
+	 * interfaces within range were already connected at the last update).
+	 * @return true if the interface is idle
+	 */
+	public boolean isIdle() {
+		return this.connections.isEmpty() && this.scanInterval == 0;
+	}
+
 	/**
 	 * Checks if this interface is currently in the scanning mode
 	 * @return True if the interface is scanning; false if not
@@ -242,10 +274,12 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	protected void connect(Connection con, NetworkInterface anotherInterface) {
 
 		this.connections.add(con);
+		this.host.connectionAdded(con);
 		notifyConnectionListeners(CON_UP, anotherInterface.getHost());
 
 		// set up bidirectional connection
-		anotherInterface.getConnections().add(con);
+		anotherInterface.connections.add(con);
+		anotherInterface.getHost().connectionAdded(con);
 
 		// inform routers about the connection
 		this.host.connectionUp(con);
@@ -254,7 +288,10 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 
 	/**
 	 * Disconnects this host from another host.  The derived class should
-	 * make the decision whether to disconnect or not
+	 * make the decision whether to disconnect or not. The connection is
+	 * removed from the other interface's connections, but the derived
+	 * class must remove it from this interface's connections afterwards
+	 * using {@link #removeConnection(int)}.
 	 * @param con The connection to tear down
 	 */
 	protected void disconnect(Connection con, 
@@ -263,10 +300,11 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		notifyConnectionListeners(CON_DOWN, anotherInterface.getHost());
 
 		// tear down bidirectional connection
-		if (!anotherInterface.getConnections().remove(con)) {
+		if (!anotherInterface.connections.remove(con)) {
 			throw new SimError("No connection " + con + " found in " +
 					anotherInterface);	
 		}
+		anotherInterface.getHost().connectionRemoved(con);
 
 		this.host.connectionDown(con);
 		anotherInterface.getHost().connectionDown(con);
@@ -289,6 +327,74 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 				anotherInterface.getHost().getLocation()) <= smallerRange;
 	}
 	
+	/**
+	 * Updates this interface's location in the connectivity optimizer
+	 * (if the interface is registered to one).
+	 */
+	public void updateLocation() {
+		if (this.optimizer != null) {
+			this.optimizer.updateLocation(this);
+		}
+	}
+	
+	/**
+	 * Finds the interfaces that are currently within range of this
+	 * interface and stores them for the next {@link #update()}.
+	 * Does not modify the optimizer or any other interface, so this method
+	 * can be called for many interfaces concurrently as long as no host 
+	 * moves and no location is updated at the same time. The optimizer
+	 * locations must be up to date (see {@link #updateLocation()}).
+	 */
+	public void scanNearInterfaces() {
+		if (this.nearInterfaces == null) {
+			this.nearInterfaces = new ArrayList<NetworkInterface>();
+		}
+		this.nearInterfaces.clear();
+		if (this.optimizer != null) {
+			optimizer.forEachNear(this, this.scanner);
+		}
+		this.hasNearInterfaces = true;
+	}
+	
+	/**
+	 * Returns the interfaces that might be close enough for a connection.
+	 * If {@link #scanNearInterfaces()} has been called after the last
+	 * update, its results are used (and consumed); otherwise the 
+	 * optimizer is asked for the near interfaces.
+	 * @return A collection of network interfaces within proximity
+	 * @see #connectToNearInterfaces()
+	 */
+	protected Collection<NetworkInterface> getNearInterfaces() {
+		if (!this.hasNearInterfaces) {
+			return optimizer.getNearInterfaces(this);
+		}
+		
+		this.hasNearInterfaces = false;
+		/* the optimizer's results would have been tried for connecting 
+		   at least once, so keep the scanning rounds the same */
+		isScanning(); 
+		return this.nearInterfaces;
+	}
+	
+	/**
+	 * Tries to connect (see {@link #connect(NetworkInterface)}) to all the
+	 * interfaces that might be close enough for a connection, in the same
+	 * order as {@link #getNearInterfaces()} returns them, but without 
+	 * collecting the interfaces to a new collection.
+	 */
+	protected void connectToNearInterfaces() {
+		if (!this.hasNearInterfaces) {
+			optimizer.forEachNear(this, this.connector);
+			return;
+		}
+		
+		this.hasNearInterfaces = false;
+		isScanning(); // as in getNearInterfaces()
+		for (int i=0, n=this.nearInterfaces.size(); i < n; i++) {
+			connect(this.nearInterfaces.get(i));
+		}
+	}
+	
 	/**
 	 * Returns true if the given NetworkInterface is connected to this host. 
 	 * @param netinterface The other NetworkInterface to check 
@@ -404,15 +510,27 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		notifyConnectionListeners(CON_DOWN, anotherNode);
 
 		// tear down bidirectional connection
-		if (!anotherInterface.getConnections().remove(con)) {
+		if (!anotherInterface.connections.remove(con)) {
 			throw new SimError("No connection " + con + " found in " +
 					anotherNode);   
 		}
+		anotherNode.connectionRemoved(con);
 
 		this.host.connectionDown(con);
 		anotherNode.connectionDown(con);
 
-		connections.remove(index);
+		removeConnection(index);
+	}
+	
+	/**
+	 * Removes a connection from the connections of this interface. The 
+	 * connection should have been torn down using 
+	 * {@link #disconnect(Connection, NetworkInterface)}.
+	 * @param index The index of the connection in the connections list
+	 */
+	protected void removeConnection(int index) {
+		Connection con = this.connections.remove(index);
+		this.host.connectionRemoved(con);
 	}
 
 	/**
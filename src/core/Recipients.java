@@ -0,0 +1,145 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Immutable list of the recipients of a message. The recipients are kept
+ * in the given order, but membership checks use the recipients sorted by
+ * their addresses so they don't have to go through the whole list. A list
+ * is never modified; {@link #without(DTNHost)} returns a new list, so the
+ * same list can be shared by the replicates of a message.
+ */
+public class Recipients extends AbstractList<DTNHost> {
+	/** the recipients in the original order */
+	private DTNHost[] hosts;
+	/** the (non-null) recipients in the order of their addresses */
+	private DTNHost[] byAddress;
+	/** addresses of the recipients in {@link #byAddress} */
+	private int[] addresses;
+	/** is one of the recipients null */
+	private boolean hasNull;
+
+	/**
+	 * Creates a new recipient list
+	 * @param hosts The recipients
+	 */
+	public Recipients(Collection<DTNHost> hosts) {
+		this(hosts.toArray(new DTNHost[hosts.size()]));
+	}
+
+	/**
+	 * Creates a new recipient list of a single recipient
+	 * @param host The recipient
+	 */
+	public Recipients(DTNHost host) {
+		this(new DTNHost[] {host});
+	}
+
+	/**
+	 * Creates a new recipient list of an array that is not modified later
+	 * @param hosts The recipients
+	 */
+	private Recipients(DTNHost[] hosts) {
+		this.hosts = hosts;
+
+		int n = 0;
+		for (DTNHost h : hosts) {
+			if (h == null) {
+				this.hasNull = true;
+			}
+			else {
+				n++;
+			}
+		}
+
+		this.byAddress = new DTNHost[n];
+		n = 0;
+		for (DTNHost h : hosts) {
+			if (h != null) {
+				this.byAddress[n++] = h;
+			}
+		}
+		if (n > 1) {
+			Arrays.sort(this.byAddress);
+		}
+
+		this.addresses = new int[n];
+		for (int i=0; i<n; i++) {
+			this.addresses[i] = this.byAddress[i].getAddress();
+		}
+	}
+
+	@Override
+	public DTNHost get(int index) {
+		return this.hosts[index];
+	}
+
+	@Override
+	public int size() {
+		return this.hosts.length;
+	}
+
+	/**
+	 * Returns true if the given host is one of the recipients
+	 * @param o The host
+	 * @return true if the host is a recipient
+	 */
+	@Override
+	public boolean contains(Object o) {
+		if (o == null) {
+			return this.hasNull;
+		}
+		if (!(o instanceof DTNHost)) {
+			return false;
+		}
+
+		int address = ((DTNHost)o).getAddress();
+		int i = Arrays.binarySearch(this.addresses, address);
+		if (i < 0) {
+			return false;
+		}
+		/* check all the hosts with the same address */
+		while (i > 0 && this.addresses[i-1] == address) {
+			i--;
+		}
+		for (; i < this.addresses.length && this.addresses[i] == address; i++) {
+			if (this.byAddress[i] == o) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns a recipient list without (the first occurrence of) the given
+	 * host. This list is not modified.
+	 * @param host The host to leave out
+	 * @return A new list without the host or this list if the host
+	 * isn't a recipient
+	 */
+	public Recipients without(DTNHost host) {
+		if (!contains(host)) {
+			return this;
+		}
+
+		DTNHost[] rest = new DTNHost[this.hosts.length - 1];
+		int n = 0;
+		boolean removed = false;
+		for (DTNHost h : this.hosts) {
+			if (!removed && h == host) {
+				removed = true;
+			}
+			else {
+				rest[n++] = h;
+			}
+		}
+
+		return new Recipients(rest);
+	}
+}
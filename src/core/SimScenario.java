@@ -24,6 +24,7 @@ import movement.StationaryMovement;
 import movement.WorkingDayMovement;
 import movement.map.SimMap;
 import routing.MessageRouter;
+import routing.MulticopyRouter;
 
 /**
  * A simulation scenario used for getting and storing the settings of a
@@ -139,6 +140,8 @@ public class SimScenario implements Serializable {
 	private List<UpdateListener> updateListeners;
 	/** Global application event listeners */
 	private List<ApplicationListener> appListeners;
+	/** Global message copy event listeners */
+	private List<MessageCopyListener> copyListeners;
 
 	static {
 		DTNSim.registerForReset(SimScenario.class.getCanonicalName());
@@ -173,6 +176,7 @@ public class SimScenario implements Serializable {
 		this.movementListeners = new ArrayList<MovementListener>();
 		this.updateListeners = new ArrayList<UpdateListener>();
 		this.appListeners = new ArrayList<ApplicationListener>();
+		this.copyListeners = new ArrayList<MessageCopyListener>();
 		this.eqHandler = new EventQueueHandler();
 
 		/* TODO: check size from movement models */
@@ -341,6 +345,22 @@ public class SimScenario implements Serializable {
 		return this.appListeners;
 	}
 	
+	/** 
+	 * Adds a new message copy event listener for all nodes.
+	 * @param cl The listener
+	 */
+	public void addCopyListener(MessageCopyListener cl) {
+		this.copyListeners.add(cl);
+	}
+	
+	/**
+	 * Returns the list of registered message copy event listeners
+	 * @return the list of registered message copy event listeners
+	 */
+	public List<MessageCopyListener> getCopyListeners() {
+		return this.copyListeners;
+	}
+	
 	/**
 	 * Creates hosts for the scenario
 	 */
@@ -422,6 +442,11 @@ public class SimScenario implements Serializable {
 				}
 			}
 			
+			if (mRouterProto instanceof MulticopyRouter) {
+				((MulticopyRouter)mRouterProto).setCopyListeners(
+						this.copyListeners);
+			}
+			
 			if (mmProto instanceof MapBasedMovement) {
 				this.simMap = ((MapBasedMovement)mmProto).getMap();
 			}
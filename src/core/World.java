@@ -5,6 +5,7 @@
 package core;
 
 import input.EventQueue;
+import input.EventQueueMultiplexer;
 import input.ExternalEvent;
 import input.ScheduledUpdatesQueue;
 import interfaces.ConnectivityGrid;
@@ -13,6 +14,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * World contains all the nodes and is responsible for updating their
@@ -37,15 +40,91 @@ public class World {
 	 * Default is @link {@link #DEF_RANDOMIZE_UPDATES}.
 	 */
 	public static final String RANDOMIZE_UPDATES_S = "randomizeUpdateOrder";
+	/**
+	 * Should the interfaces within range be pre-scanned in parallel before
+	 * every host update round -setting id ({@value}). Boolean (true/false) 
+	 * variable. If enabled, the interfaces' locations are updated first and
+	 * then all interfaces look for the interfaces within their range using
+	 * a fork-join pool. Only this neighbour scan is parallel: the hosts
+	 * themselves (connecting, disconnecting and the routers) are still 
+	 * updated one at a time in the normal update order, so the results 
+	 * don't depend on the threads' timing. They can differ from the results
+	 * without this setting though, since then an interface's location is
+	 * updated only when its host is updated, and the hosts updated before
+	 * it see the old location. 
+	 * Default is {@link #DEF_PARALLEL_SCAN}.
+	 */
+	public static final String PARALLEL_SCAN_S = "parallelScan";
+	/**
+	 * Should the interfaces within range of each other be tracked 
+	 * incrementally -setting id ({@value}). Boolean (true/false) variable.
+	 * If enabled, {@link interfaces.IncrementalConnectivityGrid}s are used
+	 * as the connectivity optimizers and the interfaces' locations are
+	 * updated for all hosts before every host update round. Then only the
+	 * interfaces that have moved are checked against the other interfaces
+	 * near them, and every such pair is checked only once. The interfaces
+	 * within range are tried for connecting in their address order.
+	 * Default is {@link #DEF_INCREMENTAL_SCAN}.
+	 */
+	public static final String INCREMENTAL_SCAN_S = "incrementalScan";
+	/**
+	 * Should the hosts be moved in parallel -setting id ({@value}). Boolean
+	 * (true/false) variable. If enabled, hosts move along their current 
+	 * paths concurrently and everything that needs the movement models 
+	 * (new paths, waiting times, shared control systems) and the movement
+	 * listeners is done afterwards for every host in address order, i.e., 
+	 * in the same order as without this option. 
+	 * Default is {@link #DEF_PARALLEL_MOVEMENT}.
+	 */
+	public static final String PARALLEL_MOVEMENT_S = "parallelMovement";
+	/**
+	 * Number of threads to use for parallel scans and movement -setting id
+	 * ({@value}). Integer. Default is the number of available processors. 
+	 * @see #PARALLEL_SCAN_S
+	 * @see #PARALLEL_MOVEMENT_S
+	 */
+	public static final String NROF_THREADS_S = "nrofThreads";
+	/**
+	 * Should the idle hosts' updates be skipped after an external event 
+	 * -setting id ({@value}). Boolean (true/false) variable. If disabled, 
+	 * all hosts are updated after every external event. If enabled, only 
+	 * the hosts returned by the event's 
+	 * {@link ExternalEvent#getAffectedHosts()} and the hosts that are not
+	 * idle (see {@link DTNHost#isIdle()}) are updated, in the same order as
+	 * all hosts would be. Since updating an idle host doesn't change 
+	 * anything, the simulation results are the same as with the setting
+	 * disabled. All hosts are updated after events that don't tell which 
+	 * hosts they concern, after a host's activeness has changed, and at the
+	 * end of every update interval.
+	 * Default is {@link #DEF_BATCH_EVENT_UPDATES}.
+	 */
+	public static final String BATCH_EVENT_UPDATES_S = "batchEventUpdates";
 	/** default value for cell size multiplier ({@value}) */
 	public static final int DEF_CON_CELL_SIZE_MULT = 5;
 	/** should the update order of nodes be randomized -setting's default value
 	 * ({@value}) */
 	public static final boolean DEF_RANDOMIZE_UPDATES = true;
+	/** should the interfaces within range be pre-scanned in parallel 
+	 * -setting's default value ({@value}) */
+	public static final boolean DEF_PARALLEL_SCAN = false;
+	/** should the interfaces within range be tracked incrementally 
+	 * -setting's default value ({@value}) */
+	public static final boolean DEF_INCREMENTAL_SCAN = false;
+	/** should the idle hosts' updates be skipped after events -setting's 
+	 * default value ({@value}) */
+	public static final boolean DEF_BATCH_EVENT_UPDATES = false;
+	/** should the hosts be moved in parallel -setting's default value 
+	 * ({@value}) */
+	public static final boolean DEF_PARALLEL_MOVEMENT = false;
+	/** how many interfaces one parallel scan task handles at most */
+	private static final int SCAN_TASK_SIZE = 64;
+	/** how many hosts one parallel movement task handles at most */
+	private static final int MOVE_TASK_SIZE = 64;
 
 	private int sizeX;
 	private int sizeY;
-	private List<EventQueue> eventQueues;
+	/** all the event queues (except scheduled updates) combined */
+	private EventQueueMultiplexer eventQueues;
 	private double updateInterval;
 	private SimClock simClock;
 	private double nextQueueEventTime;
@@ -61,9 +140,30 @@ public class World {
 	private List<UpdateListener> updateListeners;
 	/** Queue of scheduled update requests */
 	private ScheduledUpdatesQueue scheduledUpdates;
+	/** number of events processed so far */
+	private long nrofEvents;
 
 	/** single ConnectivityCell's size is biggest radio range times this */
 	private int conCellSizeMult;
+	/** pool for parallel connectivity scans and movement (null if neither
+	 * of them is used) */
+	private ForkJoinPool updatePool;
+	/** all network interfaces of all hosts in host address order (null if
+	 * neither parallel scans nor incremental scanning is used) */
+	private List<NetworkInterface> interfaces;
+	/** are the interfaces within range pre-scanned in parallel */
+	private boolean parallelScan;
+	/** are the idle hosts' updates skipped after events */
+	private boolean batchEventUpdates;
+	/** activeness of the hosts (by address) when all hosts were updated
+	 * (null if the idle hosts' updates aren't skipped) */
+	private boolean[] wasActive;
+	/** is the host (by address) concerned by the event being processed */
+	private boolean[] isAffected;
+	/** are the hosts moved in parallel */
+	private boolean parallelMovement;
+	/** hosts that move in the current parallel movement round */
+	private ArrayList<DTNHost> movingHosts;
 
 	/**
 	 * Constructor.
@@ -77,7 +177,7 @@ public class World {
 		this.updateInterval = updateInterval;
 		this.updateListeners = updateListeners;
 		this.simulateConnections = simulateConnections;
-		this.eventQueues = eventQueues;
+		this.eventQueues = new EventQueueMultiplexer(eventQueues);
 		
 		this.simClock = SimClock.getInstance();
 		this.scheduledUpdates = new ScheduledUpdatesQueue();
@@ -117,6 +217,57 @@ public class World {
 			throw new SettingsError("Too small value (" + conCellSizeMult +
 					") for " + SETTINGS_NS + "." + CELL_SIZE_MULT_S);
 		}
+		
+		this.batchEventUpdates = DEF_BATCH_EVENT_UPDATES;
+		if (s.contains(BATCH_EVENT_UPDATES_S)) {
+			this.batchEventUpdates = s.getBoolean(BATCH_EVENT_UPDATES_S);
+		}
+		if (this.batchEventUpdates) {
+			this.wasActive = new boolean[this.hosts.size()];
+			this.isAffected = new boolean[this.hosts.size()];
+		}
+		
+		this.parallelScan = DEF_PARALLEL_SCAN;
+		if (s.contains(PARALLEL_SCAN_S)) {
+			this.parallelScan = s.getBoolean(PARALLEL_SCAN_S);
+		}
+		boolean incrementalScan = DEF_INCREMENTAL_SCAN;
+		if (s.contains(INCREMENTAL_SCAN_S)) {
+			incrementalScan = s.getBoolean(INCREMENTAL_SCAN_S);
+		}
+		this.parallelMovement = DEF_PARALLEL_MOVEMENT;
+		if (s.contains(PARALLEL_MOVEMENT_S)) {
+			this.parallelMovement = s.getBoolean(PARALLEL_MOVEMENT_S);
+		}
+		
+		if (parallelScan || parallelMovement) {
+			int nrofThreads = Runtime.getRuntime().availableProcessors();
+			if (s.contains(NROF_THREADS_S)) {
+				nrofThreads = s.getInt(NROF_THREADS_S);
+				if (nrofThreads < 1) {
+					throw new SettingsError("Too small value (" + nrofThreads +
+							") for " + SETTINGS_NS + "." + NROF_THREADS_S);
+				}
+			}
+			this.updatePool = new ForkJoinPool(nrofThreads);
+		}
+		else {
+			this.updatePool = null;
+		}
+		
+		if (parallelScan || incrementalScan) {
+			this.interfaces = new ArrayList<NetworkInterface>();
+			for (DTNHost host : this.hosts) {
+				this.interfaces.addAll(host.getInterfaces());
+			}
+		}
+		else {
+			this.interfaces = null;
+		}
+		
+		if (parallelMovement) {
+			this.movingHosts = new ArrayList<DTNHost>(this.hosts.size());
+		}
 	}
 
 	/**
@@ -142,24 +293,33 @@ public class World {
 	}
 
 	/**
-	 * Goes through all event Queues and sets the 
-	 * event queue that has the next event.
+	 * Sets the event queue that has the next event. Scheduled updates 
+	 * are used if they are due at the same time as the next event from
+	 * the other queues.
 	 */
 	public void setNextEventQueue() {
 		EventQueue nextQueue = scheduledUpdates;
 		double earliest = nextQueue.nextEventsTime();
 
-		/* find the queue that has the next event */
-		for (EventQueue eq : eventQueues) {
-			if (eq.nextEventsTime() < earliest){
-				nextQueue = eq;	
-				earliest = eq.nextEventsTime();
-			}
+		double queuesEarliest = eventQueues.nextEventsTime();
+
+		if (queuesEarliest < earliest) {
+			nextQueue = eventQueues;
+			earliest = queuesEarliest;
 		}
 
 		this.nextEventQueue = nextQueue;
 		this.nextQueueEventTime = earliest;
 	}
+	
+	/**
+	 * Returns the number of (external and scheduled update) events 
+	 * processed so far
+	 * @return the number of processed events
+	 */
+	public long getNrofEvents() {
+		return this.nrofEvents;
+	}
 
 	/** 
 	 * Update (move, connect, disconnect etc.) all hosts in the world.
@@ -176,7 +336,13 @@ public class World {
 			simClock.setTime(this.nextQueueEventTime);
 			ExternalEvent ee = this.nextEventQueue.nextEvent();
 			ee.processEvent(this);
-			updateHosts(); // update all hosts after every event
+			this.nrofEvents++;
+			if (this.batchEventUpdates) {
+				updateAffectedHosts(ee);
+			}
+			else {
+				updateHosts(); // update all hosts after every event
+			}
 			setNextEventQueue();
 		}
 
@@ -198,6 +364,15 @@ public class World {
 	 */
 	private void updateHosts() {
 //		System.out.println(hosts.size());
+		if (this.interfaces != null && this.simulateConnections) {
+			scanNearInterfaces();
+		}
+		if (this.wasActive != null) {
+			for (int i=0, n = hosts.size(); i < n; i++) {
+				this.wasActive[i] = hosts.get(i).isActive();
+			}
+		}
+		
 		if (this.updateOrder == null) { // randomizing is off
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
@@ -209,8 +384,7 @@ public class World {
 		else { // update order randomizing is on
 			assert this.updateOrder.size() == this.hosts.size() : 
 				"Nrof hosts has changed unexpectedly";
-			Random rng = new Random(SimClock.getIntTime());
-			Collections.shuffle(this.updateOrder, rng); 
+			shuffleUpdateOrder();
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
 					break;
@@ -220,16 +394,147 @@ public class World {
 		}
 	}
 
+	/**
+	 * Shuffles the update order of the hosts using the current simulation
+	 * time as the seed
+	 */
+	private void shuffleUpdateOrder() {
+		Random rng = new Random(SimClock.getIntTime());
+		Collections.shuffle(this.updateOrder, rng); 
+	}
+
+	/**
+	 * Updates the hosts an external event concerns and the hosts that are
+	 * not idle, in the same order as {@link #updateHosts()} would update
+	 * them. All hosts are updated if the event doesn't tell which hosts it
+	 * concerns or if the activeness of some host has changed since all
+	 * hosts were updated (then idle hosts might connect).
+	 * @param ee The event that was just processed
+	 */
+	private void updateAffectedHosts(ExternalEvent ee) {
+		int[] addresses = ee.getAffectedHosts();
+		if (addresses == null || isActivenessChanged()) {
+			updateHosts();
+			return;
+		}
+		
+		for (int address : addresses) {
+			this.isAffected[address] = true;
+		}
+		
+		List<DTNHost> order = this.hosts;
+		if (this.updateOrder != null) {
+			shuffleUpdateOrder();
+			order = this.updateOrder;
+		}
+		
+		for (int i=0, n = order.size(); i < n; i++) {
+			if (this.isCancelled) {
+				break;
+			}
+			DTNHost host = order.get(i);
+			if (!this.isAffected[host.getAddress()] && host.isIdle()) {
+				continue; // the update wouldn't change anything
+			}
+			
+			if (this.interfaces != null && this.simulateConnections) {
+				for (NetworkInterface ni : host.getInterfaces()) {
+					ni.updateLocation();
+					if (this.parallelScan) {
+						ni.scanNearInterfaces();
+					}
+				}
+			}
+			host.update(simulateConnections);
+		}
+		
+		for (int address : addresses) {
+			this.isAffected[address] = false;
+		}
+	}
+	
+	/**
+	 * Returns true if the activeness of some host has changed since all
+	 * hosts were updated
+	 * @return true if some host's activeness has changed
+	 */
+	private boolean isActivenessChanged() {
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			if (hosts.get(i).isActive() != this.wasActive[i]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Updates the locations of all interfaces in their connectivity 
+	 * optimizers and then (if parallel scans are used) lets every 
+	 * interface find the interfaces within its range in parallel. The scan
+	 * only reads the (now stable) optimizer data and host locations, and 
+	 * its results are used when the interfaces are updated, in the normal
+	 * update order.
+	 */
+	private void scanNearInterfaces() {
+		for (int i=0, n = this.interfaces.size(); i < n; i++) {
+			this.interfaces.get(i).updateLocation();
+		}
+		if (this.parallelScan) {
+			this.updatePool.invoke(new NearInterfaceScan(this.interfaces, 0,
+					this.interfaces.size()));
+		}
+	}
+
 	/**
 	 * Moves all hosts in the world for a given amount of time
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		if (this.parallelMovement) {
+			moveHostsInParallel(timeIncrement);
+			return;
+		}
+		
 		for (int i=0,n = hosts.size(); i<n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);			
 		}		
 	}
+	
+	/**
+	 * Moves all hosts in the world for a given amount of time using the
+	 * update pool. Activeness is checked and moves are finished (new paths,
+	 * movement listeners) in host address order, and only the moves along
+	 * the hosts' current paths are done in parallel. 
+	 * @param timeIncrement The time how long all nodes should move
+	 */
+	private void moveHostsInParallel(double timeIncrement) {
+		this.movingHosts.clear();
+		for (int i=0,n = hosts.size(); i<n; i++) {
+			DTNHost host = hosts.get(i);
+			if (host.isReadyToMove()) {
+				this.movingHosts.add(host);
+			}
+		}
+		
+		this.updatePool.invoke(new HostMove(this.movingHosts, 0, 
+				this.movingHosts.size(), timeIncrement));
+		
+		for (int i=0,n = movingHosts.size(); i<n; i++) {
+			movingHosts.get(i).finishMove();
+		}
+	}
+
+	/**
+	 * Releases the worker threads of the parallel scans and movement. Must
+	 * be called when the simulation is done; the world can't be updated 
+	 * after that.
+	 */
+	public void done() {
+		if (this.updatePool != null) {
+			this.updatePool.shutdown();
+		}
+	}
 
 	/**
 	 * Asynchronously cancels the currently running simulation
@@ -308,4 +613,85 @@ public class World {
 	public void scheduleUpdate(double simTime) {
 		scheduledUpdates.addUpdate(simTime);
 	}
+	
+	/**
+	 * Fork-join task that calls {@link NetworkInterface#scanNearInterfaces()}
+	 * for a range of interfaces, splitting the range into smaller tasks if
+	 * it has more than {@link World#SCAN_TASK_SIZE} interfaces.
+	 */
+	private static class NearInterfaceScan extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private List<NetworkInterface> interfaces;
+		private int start;
+		private int end;
+		
+		/**
+		 * Constructor.
+		 * @param interfaces The list of interfaces
+		 * @param start Index of the first interface to scan
+		 * @param end Index after the last interface to scan
+		 */
+		public NearInterfaceScan(List<NetworkInterface> interfaces, 
+				int start, int end) {
+			this.interfaces = interfaces;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected void compute() {
+			if (end - start <= SCAN_TASK_SIZE) {
+				for (int i=start; i < end; i++) {
+					interfaces.get(i).scanNearInterfaces();
+				}
+				return;
+			}
+			
+			int middle = (start + end) / 2;
+			invokeAll(new NearInterfaceScan(interfaces, start, middle),
+					new NearInterfaceScan(interfaces, middle, end));
+		}
+	}
+	
+	/**
+	 * Fork-join task that calls {@link DTNHost#moveConcurrently(double)}
+	 * for a range of hosts, splitting the range into smaller tasks if
+	 * it has more than {@link World#MOVE_TASK_SIZE} hosts.
+	 */
+	private static class HostMove extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private List<DTNHost> hosts;
+		private int start;
+		private int end;
+		private double timeIncrement;
+		
+		/**
+		 * Constructor.
+		 * @param hosts The list of hosts
+		 * @param start Index of the first host to move
+		 * @param end Index after the last host to move
+		 * @param timeIncrement How long time the hosts move
+		 */
+		public HostMove(List<DTNHost> hosts, int start, int end,
+				double timeIncrement) {
+			this.hosts = hosts;
+			this.start = start;
+			this.end = end;
+			this.timeIncrement = timeIncrement;
+		}
+		
+		@Override
+		protected void compute() {
+			if (end - start <= MOVE_TASK_SIZE) {
+				for (int i=start; i < end; i++) {
+					hosts.get(i).moveConcurrently(timeIncrement);
+				}
+				return;
+			}
+			
+			int middle = (start + end) / 2;
+			invokeAll(new HostMove(hosts, start, middle, timeIncrement),
+					new HostMove(hosts, middle, end, timeIncrement));
+		}
+	}
 }
@@ -0,0 +1,243 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package input;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import movement.map.MapNode;
+import movement.map.SimMap;
+import core.Coord;
+import core.SimError;
+
+/**
+ * Binary cache of the map data read from WKT map files. The cache file
+ * stores the nodes of the map in the same order as they were read, their
+ * types and their neighbors in compressed sparse row format, so a map
+ * read from the cache is identical to the map read from the WKT files.
+ * The file is loaded through a memory mapped buffer. The cache is valid
+ * only as long as the SHA-1 digest of the map files' contents matches
+ * the one stored in the cache.
+ */
+public class BinaryMapCache {
+	/** Extension of the cache file ({@value}) */
+	public static final String CACHE_EXT = ".binmap";
+	/** Identifier at the start of the cache files */
+	private static final int MAGIC = 0x4F4E454D;
+	/** Version of the cache file format */
+	private static final int FORMAT_VERSION = 1;
+
+	private File cacheFile;
+	private byte[] digest;
+
+	/**
+	 * Constructor. The cache file is the first map file's path appended
+	 * with {@link #CACHE_EXT}.
+	 * @param mapFiles The WKT map files in the order they are read
+	 * @throws IOException If the map files can't be read
+	 */
+	public BinaryMapCache(List<File> mapFiles) throws IOException {
+		this.cacheFile = new File(mapFiles.get(0).getPath() + CACHE_EXT);
+		this.digest = digest(mapFiles);
+	}
+
+	/**
+	 * Returns the cache file
+	 * @return the cache file
+	 */
+	public File getCacheFile() {
+		return this.cacheFile;
+	}
+
+	/**
+	 * Reads the map from the cache file
+	 * @return The map or null if there's no valid cache for the map files
+	 */
+	public SimMap read() {
+		if (!cacheFile.isFile()) {
+			return null;
+		}
+
+		try {
+			RandomAccessFile file = new RandomAccessFile(cacheFile, "r");
+			try {
+				FileChannel channel = file.getChannel();
+				MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY,
+						0, channel.size());
+				return read(in);
+			} finally {
+				file.close();
+			}
+		} catch (IOException e) {
+			return null; // unreadable cache is rebuilt
+		} catch (BufferUnderflowException e) {
+			return null; // truncated cache is rebuilt
+		}
+	}
+
+	/**
+	 * Reads the map from a buffer
+	 * @param in The buffer
+	 * @return The map or null if the buffer doesn't contain a valid cache
+	 */
+	private SimMap read(MappedByteBuffer in) {
+		if (in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION) {
+			return null;
+		}
+		byte[] cachedDigest = new byte[in.getInt()];
+		in.get(cachedDigest);
+		if (!Arrays.equals(digest, cachedDigest)) {
+			return null; // map files have changed
+		}
+
+		int nrofNodes = in.getInt();
+		int nrofEdges = in.getInt();
+		List<MapNode> nodes = new ArrayList<MapNode>(nrofNodes);
+		for (int i=0; i<nrofNodes; i++) {
+			MapNode node = new MapNode(new Coord(in.getDouble(),
+					in.getDouble()));
+			int typeMask = in.getInt();
+			for (int t = MapNode.MIN_TYPE; t <= MapNode.MAX_TYPE; t++) {
+				if ((typeMask & (1 << t)) != 0) {
+					node.addType(t);
+				}
+			}
+			nodes.add(node);
+		}
+
+		int[] edgeStart = new int[nrofNodes + 1];
+		int[] edgeTarget = new int[nrofEdges];
+		in.asIntBuffer().get(edgeStart);
+		in.position(in.position() + edgeStart.length * 4);
+		in.asIntBuffer().get(edgeTarget);
+
+		for (int i=0; i<nrofNodes; i++) {
+			MapNode node = nodes.get(i);
+			for (int e = edgeStart[i]; e < edgeStart[i + 1]; e++) {
+				node.addNeighbor(nodes.get(edgeTarget[e]));
+			}
+		}
+
+		return new SimMap(nodes);
+	}
+
+	/**
+	 * Writes a map to the cache file. The map must be in the state it was
+	 * read from the map files (i.e., not mirrored or translated). The file
+	 * is first written under a temporary name, so simulations running in
+	 * parallel never read a partially written cache.
+	 * @param map The map
+	 */
+	public void write(SimMap map) {
+		List<MapNode> nodes = map.getNodes();
+		IdentityHashMap<MapNode, Integer> indexes =
+			new IdentityHashMap<MapNode, Integer>();
+		int nrofEdges = 0;
+		for (MapNode node : nodes) {
+			indexes.put(node, indexes.size());
+			nrofEdges += node.getNeighbors().size();
+		}
+
+		try {
+			File dir = cacheFile.getAbsoluteFile().getParentFile();
+			File tmpFile = File.createTempFile(cacheFile.getName(), ".tmp",
+					dir);
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.writeInt(digest.length);
+				out.write(digest);
+				out.writeInt(nodes.size());
+				out.writeInt(nrofEdges);
+
+				for (MapNode node : nodes) {
+					out.writeDouble(node.getLocation().getX());
+					out.writeDouble(node.getLocation().getY());
+					int typeMask = 0;
+					for (int t = MapNode.MIN_TYPE; t <= MapNode.MAX_TYPE; t++) {
+						if (node.isType(t)) {
+							typeMask |= 1 << t;
+						}
+					}
+					out.writeInt(typeMask);
+				}
+
+				int edge = 0;
+				for (MapNode node : nodes) {
+					out.writeInt(edge);
+					edge += node.getNeighbors().size();
+				}
+				out.writeInt(edge);
+				for (MapNode node : nodes) {
+					for (MapNode neighbor : node.getNeighbors()) {
+						out.writeInt(indexes.get(neighbor));
+					}
+				}
+			} finally {
+				out.close();
+			}
+
+			if (!tmpFile.renameTo(cacheFile)) {
+				tmpFile.delete();
+				throw new IOException("Can't rename " + tmpFile + " to " +
+						cacheFile);
+			}
+		} catch (IOException e) {
+			throw new SimError("Can't write map cache file " +
+					cacheFile.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Computes the SHA-1 digest of the contents of files
+	 * @param files The files
+	 * @return The digest
+	 * @throws IOException If the files can't be read
+	 */
+	private static byte[] digest(List<File> files) throws IOException {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new SimError(e);
+		}
+
+		byte[] buffer = new byte[64 * 1024];
+		for (File f : files) {
+			InputStream in = new FileInputStream(f);
+			long length = 0;
+			try {
+				int n;
+				while ((n = in.read(buffer)) > 0) {
+					md.update(buffer, 0, n);
+					length += n;
+				}
+			} finally {
+				in.close();
+			}
+			for (int i=0; i<8; i++) { // separates the files' contents
+				md.update((byte)(length >>> (8 * i)));
+			}
+		}
+		return md.digest();
+	}
+}
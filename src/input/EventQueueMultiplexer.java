@@ -0,0 +1,186 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package input;
+
+import java.util.List;
+
+/**
+ * Event queue that combines multiple event queues into one. The queues
+ * whose next event's time can change only when their own events are
+ * consumed (external event files and message event generators) are kept in
+ * a binary min-heap keyed by their next event's time, so that only the
+ * queue whose event was just returned needs to be re-keyed. Other queues
+ * (e.g. ones that get events from outside the simulation) are checked
+ * every time the next event is looked up. If multiple queues have events
+ * at the same time, the one that is first in the original list is used.
+ */
+public class EventQueueMultiplexer implements EventQueue {
+	/** All the queues (index of a queue in this array is its id) */
+	private EventQueue[] queues;
+	/** Cached next event times of the heap-ordered queues (by id) */
+	private double[] times;
+	/** Ids of the heap-ordered queues as a binary min-heap */
+	private int[] heap;
+	/** Number of queues in the heap */
+	private int heapSize;
+	/** Ids of the queues that are checked on every lookup */
+	private int[] polled;
+	
+	/**
+	 * Constructor.
+	 * @param eventQueues The event queues to combine
+	 */
+	public EventQueueMultiplexer(List<EventQueue> eventQueues) {
+		int n = eventQueues.size();
+		int nrofPolled = 0;
+		
+		this.queues = eventQueues.toArray(new EventQueue[n]);
+		this.times = new double[n];
+		this.heap = new int[n];
+		this.heapSize = 0;
+		
+		for (EventQueue eq : this.queues) {
+			if (!isSelfKeyed(eq)) {
+				nrofPolled++;
+			}
+		}
+		this.polled = new int[nrofPolled];
+		nrofPolled = 0;
+		
+		for (int i=0; i<n; i++) {
+			if (isSelfKeyed(this.queues[i])) {
+				this.times[i] = this.queues[i].nextEventsTime();
+				this.heap[this.heapSize] = i;
+				siftUp(this.heapSize++);
+			}
+			else {
+				this.polled[nrofPolled++] = i;
+			}
+		}
+	}
+	
+	/**
+	 * Returns true if the next event's time of the given queue can change
+	 * only when {@link EventQueue#nextEvent()} of the queue is called
+	 * @param eq The event queue to check
+	 * @return true if the queue can be kept in the heap
+	 */
+	private boolean isSelfKeyed(EventQueue eq) {
+		return eq instanceof ExternalEventsQueue || 
+			eq instanceof MessageEventGenerator;
+	}
+	
+	/**
+	 * Returns the id of the queue that has the next event or -1 if there
+	 * are no queues
+	 * @return the id of the queue that has the next event
+	 */
+	private int nextQueue() {
+		int next = -1;
+		double earliest = Double.MAX_VALUE;
+		
+		if (this.heapSize > 0) {
+			next = this.heap[0];
+			earliest = this.times[next];
+		}
+		
+		for (int id : this.polled) {
+			double time = this.queues[id].nextEventsTime();
+			if (next == -1 || time < earliest || 
+					(time == earliest && id < next)) {
+				next = id;
+				earliest = time;
+			}
+		}
+		
+		return next;
+	}
+	
+	/**
+	 * Returns the next event from the queue that has the earliest event or
+	 * event with time Double.MAX_VALUE if there are no events left.
+	 * @return The next event
+	 */
+	public ExternalEvent nextEvent() {
+		int next = nextQueue();
+		if (next == -1) {
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+		
+		ExternalEvent ee = this.queues[next].nextEvent();
+		
+		if (this.heapSize > 0 && this.heap[0] == next) { 
+			/* re-key the queue whose event was returned */
+			this.times[next] = this.queues[next].nextEventsTime();
+			siftDown(0);
+		}
+		
+		return ee;
+	}
+	
+	/**
+	 * Returns the earliest next event's time of all the queues or
+	 * Double.MAX_VALUE if there are no events left.
+	 * @return Next event's time
+	 */
+	public double nextEventsTime() {
+		int next = nextQueue();
+		if (next == -1) {
+			return Double.MAX_VALUE;
+		}
+		
+		return this.queues[next].nextEventsTime();
+	}
+	
+	/**
+	 * Returns true if the queue with id a should be before queue with id b
+	 * in the heap
+	 */
+	private boolean isBefore(int a, int b) {
+		return this.times[a] < this.times[b] || 
+			(this.times[a] == this.times[b] && a < b);
+	}
+	
+	/**
+	 * Moves the heap entry in the given position up until the heap order 
+	 * is restored
+	 * @param pos Position of the entry
+	 */
+	private void siftUp(int pos) {
+		int id = this.heap[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (!isBefore(id, this.heap[parent])) {
+				break;
+			}
+			this.heap[pos] = this.heap[parent];
+			pos = parent;
+		}
+		this.heap[pos] = id;
+	}
+	
+	/**
+	 * Moves the heap entry in the given position down until the heap order 
+	 * is restored
+	 * @param pos Position of the entry
+	 */
+	private void siftDown(int pos) {
+		int id = this.heap[pos];
+		int half = this.heapSize >>> 1;
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			if (child + 1 < this.heapSize && 
+					isBefore(this.heap[child + 1], this.heap[child])) {
+				child++;
+			}
+			if (!isBefore(this.heap[child], id)) {
+				break;
+			}
+			this.heap[pos] = this.heap[child];
+			pos = child;
+		}
+		this.heap[pos] = id;
+	}
+}
@@ -29,6 +29,16 @@ public class ExternalEvent implements Comparable<ExternalEvent>, Serializable {
 		// this is just a dummy event
 	}
 
+	/**
+	 * Returns the addresses of the hosts whose state this event can change
+	 * when it is processed, or null if the event can affect any host (or
+	 * requests an update of all hosts, like this dummy event does).
+	 * @return The addresses of the affected hosts or null for all hosts
+	 */
+	public int[] getAffectedHosts() {
+		return null;
+	}
+
 	/**
 	 * Returns the time when this event should happen.
 	 * @return Event's time
@@ -64,8 +64,6 @@ public class MessageCreateEvent extends MessageEvent {
 		if(from.getRouter() instanceof MulticopyRouter) {
 			copies = ((MulticopyRouter)from.getRouter()).getCopies();
 			m.setCopies(copies);
-			from.setCcap(copies);
-			System.out.println(from+" creates "+m+" for "+m.getTo()+" with "+copies+" copies");
 		}
 		from.createNewMessage(m);
 	}
@@ -40,6 +40,25 @@ public abstract class MessageEvent extends ExternalEvent {
 		this.id = id;
 	}
 	
+	/**
+	 * Returns the addresses of the sender and the recipient(s) of the 
+	 * message.
+	 * @return The addresses of the hosts this event concerns
+	 */
+	@Override
+	public int[] getAffectedHosts() {
+		if (this.mtoAddr == null) {
+			return new int[] {this.fromAddr, this.toAddr};
+		}
+		
+		int[] addresses = new int[this.mtoAddr.size() + 1];
+		addresses[0] = this.fromAddr;
+		for (int i=0, n=this.mtoAddr.size(); i < n; i++) {
+			addresses[i+1] = this.mtoAddr.get(i);
+		}
+		return addresses;
+	}
+	
 	@Override
 	public String toString() {
 		return "MSG @" + this.time + " " + id;
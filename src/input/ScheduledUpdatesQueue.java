@@ -4,25 +4,37 @@
  */
 package input;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Event queue where simulation objects can request an update to happen
  * at the specified simulation time. Multiple updates at the same time 
  * are merged to a single update.
+ * <P>Update times are kept in a binary min-heap of primitive doubles so
+ * that both adding an update and taking the next one are O(log n).
+ * A time that is already the next one, or the same as the previously
+ * added time, isn't added again. Other duplicate times are allowed in the
+ * heap and merged when the first of them is taken out of the queue, so
+ * scheduling the same times in turns grows the heap until they are due.</P>
  */
 public class ScheduledUpdatesQueue implements EventQueue {
-	/** Time of the event (simulated seconds) */
-	private ExternalEvent nextEvent;
-	private List<ExternalEvent> updates;
+	/** Initial capacity of the update time heap */
+	private static final int INITIAL_CAPACITY = 16;
+	
+	/** Update times as a binary min-heap (valid part is [0, size)) */
+	private double[] times;
+	/** Number of update times in the heap */
+	private int size;
+	/** The previously added time if it's still in the heap, NaN otherwise */
+	private double lastAdded;
 	
 	/**
 	 * Constructor. Creates an empty update queue.
 	 */
 	public ScheduledUpdatesQueue(){
-		this.nextEvent = new ExternalEvent(Double.MAX_VALUE);
-		this.updates = new ArrayList<ExternalEvent>();
+		this.times = new double[INITIAL_CAPACITY];
+		this.size = 0;
+		this.lastAdded = Double.NaN;
 	}
 	
 	/**
@@ -31,16 +43,19 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @return the next scheduled event
 	 */
 	public ExternalEvent nextEvent() {
-		ExternalEvent event = this.nextEvent;
-		
-		if (this.updates.size() == 0) {
-			this.nextEvent = new ExternalEvent(Double.MAX_VALUE);
+		if (this.size == 0) {
+			return new ExternalEvent(Double.MAX_VALUE);
 		}
-		else {
-			this.nextEvent = this.updates.remove(0);
+		
+		double time = this.times[0];
+		do { /* remove all the (merged) updates with the same time */
+			removeFirst();
+		} while (this.size > 0 && this.times[0] == time);
+		if (time == this.lastAdded) {
+			this.lastAdded = Double.NaN;
 		}
 		
-		return event;
+		return new ExternalEvent(time);
 	}
 	
 	/**
@@ -49,7 +64,7 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @return the next scheduled event's time
 	 */
 	public double nextEventsTime() {
-		return this.nextEvent.getTime();
+		return this.size == 0 ? Double.MAX_VALUE : this.times[0];
 	}
 
 	/**
@@ -57,47 +72,67 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @param simTime The time when the update should happen
 	 */
 	public void addUpdate(double simTime) {
-		ExternalEvent ee = new ExternalEvent(simTime);
-
-		if (ee.compareTo(nextEvent) == 0) { // this event is already next
-			return;
+		if (this.size > 0 && this.times[0] == simTime) {
+			return; // this event is already next
+		}
+		if (simTime == this.lastAdded) {
+			return; // was just added and is still waiting
 		}
-		else if (this.nextEvent.getTime() > simTime) { // new nextEvent
-			putToQueue(this.nextEvent); // put the old nextEvent back to q
-			this.nextEvent = ee;
+		this.lastAdded = simTime;
+		
+		if (this.size == this.times.length) {
+			double[] newTimes = new double[this.times.length * 2];
+			System.arraycopy(this.times, 0, newTimes, 0, this.size);
+			this.times = newTimes;
 		}
-		else { // given event happens later..
-			putToQueue(ee);
+		
+		/* sift up from the end of the heap */
+		int i = this.size++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (this.times[parent] <= simTime) {
+				break;
+			}
+			this.times[i] = this.times[parent];
+			i = parent;
 		}
+		this.times[i] = simTime;
 	}
 	
 	/**
-	 * Puts a event to the queue in the right place
-	 * @param ee The event to put to the queue
+	 * Removes the smallest time from the heap
 	 */
-	private void putToQueue(ExternalEvent ee) {
-		double eeTime = ee.getTime();
+	private void removeFirst() {
+		double last = this.times[--this.size];
+		int half = this.size >>> 1;
+		int i = 0;
 		
-		for (int i=0, n=this.updates.size(); i<n; i++) {
-			double time = updates.get(i).getTime();
-			if (time == eeTime) {
-				return; // update with the given time exists -> no need for new
+		/* sift the last time down from the root */
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < this.size && 
+					this.times[child + 1] < this.times[child]) {
+				child++;
 			}
-			else if (eeTime < time) {
-				this.updates.add(i, ee);
-				return;
+			if (last <= this.times[child]) {
+				break;
 			}
+			this.times[i] = this.times[child];
+			i = child;
 		}
-		
-		/* all existing updates are earlier -> add to the end of the list */
-		this.updates.add(ee);  
+		this.times[i] = last;
 	}
 	
 	public String toString() {
-		String times = "updates @ " + this.nextEvent.getTime();
+		double[] sorted = new double[this.size];
+		System.arraycopy(this.times, 0, sorted, 0, this.size);
+		Arrays.sort(sorted);
 		
-		for (ExternalEvent ee : this.updates) {
-			times += ", " + ee.getTime();
+		String times = "updates @ " + nextEventsTime();
+		for (int i=1; i<sorted.length; i++) {
+			if (sorted[i] != sorted[i-1]) {
+				times += ", " + sorted[i];
+			}
 		}
 		
 		return times;
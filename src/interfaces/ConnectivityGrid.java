@@ -14,6 +14,7 @@ import core.Coord;
 import core.DTNSim;
 import core.NetworkInterface;
 import core.Settings;
+import core.World;
 
 /**
  * <P>
@@ -33,6 +34,16 @@ import core.Settings;
  * connectivity. 
  * </P>
  * <P>
+ * The cells are sized for the shortest radio range of the interfaces in
+ * the grid. Interfaces with a longer range than that (e.g. the radios of
+ * community centers) are also kept in a second, coarser grid whose cells 
+ * are sized for the longest range. Every interface is found from the fine
+ * grid by all the interfaces within the smaller one of the two ranges, and
+ * the long range interfaces additionally look for each other from the 
+ * coarse grid, so short range interfaces never need to check the big 
+ * cells.
+ * </P>
+ * <P>
  * <strong>Note:</strong> this class does NOT support negative
  * coordinates. Also, it makes sense to normalize the coordinates to start
  * from zero to conserve memory. 
@@ -43,8 +54,18 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	private int cellSize;
 	private int rows;
 	private int cols;
+	/** cells of the coarse grid for the long range interfaces (null if 
+	 * there are no such interfaces) */
+	private GridCell[][] coarseCells;
+	/** coarse grid cells of the long range interfaces */
+	private HashMap<NetworkInterface,GridCell> coarseInterfaces;
+	private int coarseCellSize;
+	private int coarseRows;
+	private int coarseCols;
 	private static int worldSizeX;
 	private static int worldSizeY;
+	/** are incremental grids created instead of normal grids */
+	private static boolean incrementalScan;
 
 	static HashMap<Integer,ConnectivityGrid> gridobjects;
 
@@ -60,43 +81,106 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
 		worldSizeX = worldSize[0];
 		worldSizeY = worldSize[1];
+		
+		Settings os = new Settings(World.SETTINGS_NS);
+		incrementalScan = os.contains(World.INCREMENTAL_SCAN_S) && 
+			os.getBoolean(World.INCREMENTAL_SCAN_S);
 	}
 
 	/**
 	 * Creates a new overlay connectivity grid
 	 *
-	 * @param cellSize Cell's edge's length (must be larger than the largest
-	 * 	radio coverage's diameter)
+	 * @param cellSize Cell's edge's length (should be the shortest radio 
+	 * range of the interfaces)
 	 */
-	private ConnectivityGrid(int cellSize) {
+	protected ConnectivityGrid(int cellSize) {
+		this.cellSize = cellSize;
 		this.rows = worldSizeY/cellSize + 1;
 		this.cols = worldSizeX/cellSize + 1;
-		// leave empty cells on both sides to make neighbor search easier 
-		this.cells = new GridCell[rows+2][cols+2];
-		this.cellSize = cellSize;
+		this.cells = createCells(rows, cols);
+		ginterfaces = new HashMap<NetworkInterface,GridCell>();
+		coarseInterfaces = new HashMap<NetworkInterface,GridCell>();
+	}
 
+	/**
+	 * Creates a matrix of empty cells
+	 * @param rows Number of rows the world needs
+	 * @param cols Number of columns the world needs
+	 * @return The cells
+	 */
+	private GridCell[][] createCells(int rows, int cols) {
+		// leave empty cells on both sides to make neighbor search easier 
+		GridCell[][] newCells = new GridCell[rows+2][cols+2];
 		for (int i=0; i<rows+2; i++) {
 			for (int j=0; j<cols+2; j++) {
-				this.cells[i][j] = new GridCell();
+				newCells[i][j] = new GridCell(i, j);
 			}
 		}
-		ginterfaces = new HashMap<NetworkInterface,GridCell>();
+		return newCells;
 	}
 
 	/**
-	 * Returns a connectivity grid object based on a hash value
+	 * Changes the size of the (fine) cells and puts all interfaces to the
+	 * new cells. The interfaces are moved cell by cell, so their order 
+	 * stays deterministic.
+	 * @param cellSize The new size of the cells
+	 */
+	protected void setCellSize(int cellSize) {
+		GridCell[][] oldCells = this.cells;
+		
+		this.cellSize = cellSize;
+		this.rows = worldSizeY/cellSize + 1;
+		this.cols = worldSizeX/cellSize + 1;
+		this.cells = createCells(rows, cols);
+		
+		for (GridCell[] row : oldCells) {
+			for (GridCell oldCell : row) {
+				for (NetworkInterface ni : oldCell.getInterfaces()) {
+					GridCell c = clampedCellFromCoord(ni.getLocation());
+					c.addInterface(ni);
+					ginterfaces.put(ni, c);
+				}
+			}
+		}
+		/* which interfaces are long range ones may have changed */
+		for (GridCell[] row : this.cells) {
+			for (GridCell cell : row) {
+				for (NetworkInterface ni : cell.getInterfaces()) {
+					updateCoarseLocation(ni);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a connectivity grid object based on a hash value. If 
+	 * incremental scanning is enabled (see {@link World#INCREMENTAL_SCAN_S}),
+	 * new grids are {@link IncrementalConnectivityGrid}s. If the grid 
+	 * already exists but has larger cells than requested, the cells are 
+	 * made smaller.
 	 * @param key A hash value that separates different interfaces from each other
-	 * @param cellSize  Cell's edge's length (must be larger than the largest
-	 * 	radio coverage's diameter)
+	 * @param cellSize  Cell's edge's length (the radio range of the 
+	 * interface that is going to be added to the grid)
 	 * @return The connectivity grid object for a specific interface
 	 */
 	public static ConnectivityGrid ConnectivityGridFactory(int key, 
 			double cellSize) {
 		if (gridobjects.containsKey((Integer)key)) {
-			return (ConnectivityGrid)gridobjects.get((Integer)key);
+			ConnectivityGrid grid = gridobjects.get((Integer)key);
+			int size = (int)Math.ceil(cellSize);
+			if (size > 0 && size < grid.cellSize) {
+				grid.setCellSize(size);
+			}
+			return grid;
 		} else {
-			ConnectivityGrid newgrid = 
-				new ConnectivityGrid((int)Math.ceil(cellSize));
+			ConnectivityGrid newgrid;
+			if (incrementalScan) {
+				newgrid = new IncrementalConnectivityGrid(
+						(int)Math.ceil(cellSize));
+			}
+			else {
+				newgrid = new ConnectivityGrid((int)Math.ceil(cellSize));
+			}
 			gridobjects.put((Integer)key,newgrid);
 			return newgrid;
 		}
@@ -110,6 +194,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		GridCell c = cellFromCoord(ni.getLocation());
 		c.addInterface(ni);
 		ginterfaces.put(ni,c);
+		updateCoarseLocation(ni);
 	}
 
 	/** 
@@ -122,6 +207,11 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 			c.removeInterface(ni);
 		}
 		ginterfaces.remove(ni);
+		
+		c = coarseInterfaces.remove(ni);
+		if (c != null) {
+			c.removeInterface(ni);
+		}
 	}
 
 	/**
@@ -146,33 +236,149 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 			oldCell.moveInterface(ni, newCell);
 			ginterfaces.put(ni,newCell);
 		}
+		updateCoarseLocation(ni);
+	}
+
+	/**
+	 * Checks and updates (if necessary) interface's position in the coarse
+	 * grid. Interfaces whose range is not longer than the size of the (fine)
+	 * cells are not in the coarse grid. The coarse grid is (re)created if 
+	 * the interface's range is longer than the coarse cells.
+	 * @param ni The interface to update
+	 */
+	private void updateCoarseLocation(NetworkInterface ni) {
+		double range = ni.getTransmitRange();
+		if (range <= cellSize && coarseCells == null) {
+			return; // the usual case: no long range interfaces
+		}
+		
+		GridCell oldCell = coarseInterfaces.get(ni);
+		if (range <= cellSize) {
+			if (oldCell != null) {
+				oldCell.removeInterface(ni);
+				coarseInterfaces.remove(ni);
+			}
+			return;
+		}
+		
+		if (coarseCells == null || range > coarseCellSize) {
+			setCoarseCellSize((int)Math.ceil(range));
+			oldCell = coarseInterfaces.get(ni);
+		}
+		
+		GridCell newCell = coarseCellFromCoord(ni.getLocation());
+		if (oldCell == null) {
+			newCell.addInterface(ni);
+			coarseInterfaces.put(ni, newCell);
+		}
+		else if (newCell != oldCell) {
+			oldCell.moveInterface(ni, newCell);
+			coarseInterfaces.put(ni, newCell);
+		}
 	}
 
 	/**
-	 * Finds all neighboring cells and the cell itself based on the coordinates
+	 * Creates the coarse grid with the given cell size and moves the 
+	 * interfaces of the old coarse grid (if any) to it
+	 * @param size Size of the coarse cells
+	 */
+	private void setCoarseCellSize(int size) {
+		GridCell[][] oldCells = this.coarseCells;
+		
+		this.coarseCellSize = size;
+		this.coarseRows = worldSizeY/size + 1;
+		this.coarseCols = worldSizeX/size + 1;
+		this.coarseCells = createCells(coarseRows, coarseCols);
+		
+		if (oldCells == null) {
+			return;
+		}
+		for (GridCell[] row : oldCells) {
+			for (GridCell oldCell : row) {
+				for (NetworkInterface ni : oldCell.getInterfaces()) {
+					GridCell c = coarseCellFromCoord(ni.getLocation());
+					c.addInterface(ni);
+					coarseInterfaces.put(ni, c);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calls the visitor for all interfaces in the cell that has the given 
+	 * coordinates and in the neighboring cells of it. The cells are visited
+	 * row by row, starting from the upper left neighbor.
 	 * @param c The coordinates
-	 * @return Array of neighboring cells 
+	 * @param visitor The visitor to call for every interface
 	 */
-	private GridCell[] getNeighborCellsByCoord(Coord c) {
+	protected void forEachInNeighborCells(Coord c, InterfaceVisitor visitor) {
 		// +1 due empty cells on both sides of the matrix
 		int row = (int)(c.getY()/cellSize) + 1;
 		int col = (int)(c.getX()/cellSize) + 1;
-		return getNeighborCells(row,col);
+		
+		for (int i=row-1; i<=row+1; i++) {
+			for (int j=col-1; j<=col+1; j++) {
+				ArrayList<NetworkInterface> list = cells[i][j].interfaces;
+				for (int k=0, n=list.size(); k<n; k++) {
+					visitor.visit(list.get(k));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calls the visitor for all interfaces that might be located so that
+	 * they can be connected with the given interface: first for all the 
+	 * interfaces in the neighboring (fine) cells and then, if the interface
+	 * has a longer range than the cell size, for the other long range 
+	 * interfaces in the neighboring coarse cells that were not visited yet.
+	 * @param ni The interface
+	 * @param visitor The visitor to call for every interface
+	 */
+	protected void forEachCandidate(NetworkInterface ni, 
+			InterfaceVisitor visitor) {
+		Coord c = ni.getLocation();
+		forEachInNeighborCells(c, visitor);
+		
+		if (coarseCells == null || ni.getTransmitRange() <= cellSize) {
+			return;
+		}
+		
+		int row = (int)(c.getY()/cellSize) + 1;
+		int col = (int)(c.getX()/cellSize) + 1;
+		int coarseRow = (int)(c.getY()/coarseCellSize) + 1;
+		int coarseCol = (int)(c.getX()/coarseCellSize) + 1;
+		
+		for (int i=coarseRow-1; i<=coarseRow+1; i++) {
+			for (int j=coarseCol-1; j<=coarseCol+1; j++) {
+				ArrayList<NetworkInterface> list = 
+					coarseCells[i][j].interfaces;
+				for (int k=0, n=list.size(); k<n; k++) {
+					NetworkInterface other = list.get(k);
+					GridCell fine = ginterfaces.get(other);
+					if (Math.abs(fine.row - row) > 1 || 
+							Math.abs(fine.col - col) > 1) {
+						visitor.visit(other); // not visited from fine cells
+					}
+				}
+			}
+		}
 	}
 
 	/**
-	 * Returns an array of Cells that contains the neighbors of a certain
-	 * cell and the cell itself.
-	 * @param row Row index of the cell
-	 * @param col Column index of the cell
-	 * @return Array of neighboring Cells
+	 * Get the cell of the coarse grid having the specific coordinates
+	 * @param c Coordinates
+	 * @return The cell
 	 */
-	private GridCell[] getNeighborCells(int row, int col) {
-		return new GridCell[] {
-			cells[row-1][col-1],cells[row-1][col],cells[row-1][col+1],//1st row
-			cells[row][col-1],cells[row][col],cells[row][col+1],//2nd row
-			cells[row+1][col-1],cells[row+1][col],cells[row+1][col+1]//3rd row
-		};
+	private GridCell coarseCellFromCoord(Coord c) {
+		// +1 due empty cells on both sides of the matrix
+		int row = (int)(c.getY()/coarseCellSize) + 1; 
+		int col = (int)(c.getX()/coarseCellSize) + 1;
+
+		assert row > 0 && row <= coarseRows && col > 0 && col <= coarseCols :
+			"Location " + c + " is out of world's bounds";
+		
+		return this.coarseCells[row][col];
 	}
 
 	/**
@@ -191,6 +397,25 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		return this.cells[row][col];
 	}
 
+	/**
+	 * Get the cell having the specific coordinates or, if the coordinates
+	 * are out of the world's bounds, the nearest cell inside the bounds.
+	 * Larger cells can extend past the world's bounds, so interfaces that 
+	 * were in some cell before the cells were made smaller aren't 
+	 * necessarily inside the new cells.
+	 * @param c Coordinates
+	 * @return The cell
+	 */
+	private GridCell clampedCellFromCoord(Coord c) {
+		// +1 due empty cells on both sides of the matrix
+		int row = (int)(c.getY()/cellSize) + 1; 
+		int col = (int)(c.getX()/cellSize) + 1;
+		
+		row = Math.max(1, Math.min(rows, row));
+		col = Math.max(1, Math.min(cols, col));
+		return this.cells[row][col];
+	}
+
 	/**
 	 * Returns all interfaces that use the same technology and channel
 	 */
@@ -200,24 +425,38 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 
 	/**
 	 * Returns all interfaces using the same technology and channel that are in
-	 * neighboring cells
+	 * neighboring cells (and, for long range interfaces, the long range 
+	 * interfaces in the neighboring coarse cells)
 	 */
 	public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface netinterf) {
-		ArrayList<NetworkInterface> ni = new ArrayList<NetworkInterface>();
-		ni.clear();
+		final ArrayList<NetworkInterface> ni = 
+			new ArrayList<NetworkInterface>();
 
 		GridCell loc = (GridCell)ginterfaces.get(netinterf);
 		if (loc != null) {	
-			GridCell[] neighbors = 
-				getNeighborCellsByCoord(netinterf.getLocation());
-			for (int i=0; i < neighbors.length; i++) {
-				ni.addAll(neighbors[i].getInterfaces());
-			}
+			forEachCandidate(netinterf, new InterfaceVisitor() {
+				public void visit(NetworkInterface other) {
+					ni.add(other);
+				}
+			});
 		}
 		return ni;
 	}
 
+	/**
+	 * Calls the visitor for all interfaces using the same technology and 
+	 * channel that are in neighboring cells (and, for long range interfaces,
+	 * for the long range interfaces in the neighboring coarse cells). No 
+	 * collections are created for the interfaces.
+	 */
+	public void forEachNear(NetworkInterface netinterf, 
+			InterfaceVisitor visitor) {
+		if (ginterfaces.get(netinterf) != null) {
+			forEachCandidate(netinterf, visitor);
+		}
+	}
+
 
 	/**
 	 * Returns a string representation of the ConnectivityCells object
@@ -236,10 +475,15 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		// how large array is initially chosen
 		private static final int EXPECTED_INTERFACE_COUNT = 5;
 		private ArrayList<NetworkInterface> interfaces;
+		/** row and column of the cell in its grid */
+		private int row;
+		private int col;
 
-		private GridCell() {
+		private GridCell(int row, int col) {
 			this.interfaces = new ArrayList<NetworkInterface>(
 					EXPECTED_INTERFACE_COUNT);
+			this.row = row;
+			this.col = col;
 		}
 
 		/**
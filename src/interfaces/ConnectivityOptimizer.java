@@ -40,6 +40,23 @@ abstract public class ConnectivityOptimizer {
 	abstract public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni);
 
+	/**
+	 * Calls the visitor for all network interfaces that might be located so
+	 * that they can be connected with the network interface, in the same
+	 * order as {@link #getNearInterfaces(NetworkInterface)} returns them.
+	 * Subclasses should override this to visit the interfaces without 
+	 * collecting them first.
+	 * 
+	 * @param ni network interface that needs to be connected
+	 * @param visitor The visitor to call for every interface within 
+	 * proximity
+	 */
+	public void forEachNear(NetworkInterface ni, InterfaceVisitor visitor) {
+		for (NetworkInterface near : getNearInterfaces(ni)) {
+			visitor.visit(near);
+		}
+	}
+
 	/**
 	 * Finds all other interfaces that are registered to the
 	 * ConnectivityOptimizer
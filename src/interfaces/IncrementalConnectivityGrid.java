@@ -0,0 +1,312 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package interfaces;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import core.Coord;
+import core.NetworkInterface;
+
+/**
+ * <P>
+ * Connectivity grid that keeps track of the interfaces that are within 
+ * range of each other instead of finding them again every time they are
+ * asked for. Only the interfaces that have moved (or whose range has 
+ * changed) since the last query are checked against the interfaces in 
+ * their neighboring cells, and every pair of interfaces is checked only 
+ * once, so stationary interfaces (e.g. the ones of community center hosts)
+ * don't cost anything unless someone moves close to them.</P>
+ * 
+ * <P>Unlike {@link ConnectivityGrid}, this optimizer returns only the
+ * interfaces that were within range when the neighborhoods were updated,
+ * ordered by their address. Hence all interfaces' locations must be 
+ * updated before the first query after the hosts have moved (see 
+ * {@link core.World#INCREMENTAL_SCAN_S}).</P>
+ */
+public class IncrementalConnectivityGrid extends ConnectivityGrid {
+	/** neighborhoods of the interfaces in the grid */
+	private HashMap<NetworkInterface, Neighborhood> neighborhoods;
+	/** neighborhoods of the interfaces that have moved since the last 
+	 * update of the neighborhoods */
+	private ArrayList<Neighborhood> moved;
+	/** visitor that finds the new neighbors of moved interfaces */
+	private NeighborFinder finder;
+
+	/**
+	 * Creates a new incremental connectivity grid
+	 * @param cellSize Cell's edge's length (must be larger than the largest
+	 * 	radio coverage's diameter)
+	 */
+	protected IncrementalConnectivityGrid(int cellSize) {
+		super(cellSize);
+		this.neighborhoods = new HashMap<NetworkInterface, Neighborhood>();
+		this.moved = new ArrayList<Neighborhood>();
+		this.finder = new NeighborFinder();
+	}
+
+	/**
+	 * Adds a network interface to the overlay grid
+	 * @param ni The new network interface
+	 */
+	public void addInterface(NetworkInterface ni) {
+		super.addInterface(ni);
+		
+		Neighborhood n = new Neighborhood(ni);
+		this.neighborhoods.put(ni, n);
+		setMoved(n);
+	}
+
+	/** 
+	 * Removes a network interface from the overlay grid 
+	 * @param ni The interface to be removed
+	 */
+	public void removeInterface(NetworkInterface ni) {
+		super.removeInterface(ni);
+		
+		Neighborhood n = getNeighborhood(ni);
+		if (n == null) {
+			return;
+		}
+		for (NetworkInterface other : n.near) {
+			getNeighborhood(other).removeNear(ni);
+		}
+		if (n.isMoved) {
+			this.moved.remove(n);
+		}
+		this.neighborhoods.remove(ni);
+	}
+
+	/**
+	 * Checks and updates (if necessary) interface's position in the grid
+	 * and marks the interface moved if its location or range has changed
+	 * @param ni The interface to update
+	 */
+	public void updateLocation(NetworkInterface ni) {
+		Neighborhood n = getNeighborhood(ni);
+		if (n.isMoved) {
+			super.updateLocation(ni);
+			return;
+		}
+		
+		Coord loc = ni.getLocation();
+		if (loc.getX() != n.x || loc.getY() != n.y) {
+			super.updateLocation(ni);
+			setMoved(n);
+		}
+		else if (ni.getTransmitRange() != n.range) {
+			super.updateLocation(ni); // may become a long range interface
+			setMoved(n);
+		}
+	}
+
+	/**
+	 * Changes the size of the cells. All neighborhoods are updated on the 
+	 * next query.
+	 * @param cellSize The new size of the cells
+	 */
+	protected void setCellSize(int cellSize) {
+		super.setCellSize(cellSize);
+		for (Neighborhood n : this.neighborhoods.values()) {
+			if (!n.isMoved) {
+				setMoved(n);
+			}
+		}
+	}
+
+	/**
+	 * Returns all interfaces using the same technology and channel that 
+	 * were within range of the given interface when the neighborhoods were
+	 * last updated. The neighborhoods of the interfaces that have moved are
+	 * updated first. The returned collection must not be modified.
+	 */
+	public Collection<NetworkInterface> getNearInterfaces(
+			NetworkInterface ni) {
+		updateNeighborhoods();
+		
+		Neighborhood n = getNeighborhood(ni);
+		if (n == null) {
+			return Collections.emptyList();
+		}
+		return n.near;
+	}
+
+	/**
+	 * Calls the visitor for all interfaces that were within range of the 
+	 * given interface when the neighborhoods were last updated. The 
+	 * neighborhoods of the interfaces that have moved are updated first.
+	 */
+	public void forEachNear(NetworkInterface ni, InterfaceVisitor visitor) {
+		updateNeighborhoods();
+		
+		Neighborhood n = getNeighborhood(ni);
+		if (n == null) {
+			return;
+		}
+		List<NetworkInterface> near = n.near;
+		for (int i=0, size=near.size(); i<size; i++) {
+			visitor.visit(near.get(i));
+		}
+	}
+
+	/**
+	 * Updates the neighborhoods of all moved interfaces (and the 
+	 * neighborhoods of the interfaces around them). This is synchronized
+	 * so that the first one of concurrent queries does the update and
+	 * the rest only read the results.
+	 */
+	private synchronized void updateNeighborhoods() {
+		if (this.moved.isEmpty()) {
+			return;
+		}
+		
+		/* forget the old neighbors of the moved interfaces */
+		for (Neighborhood n : this.moved) {
+			for (NetworkInterface other : n.near) {
+				Neighborhood o = getNeighborhood(other);
+				if (!o.isMoved) {
+					o.removeNear(n.ni);
+				}
+			}
+			n.near.clear();
+		}
+		
+		/* find the new neighbors; if both interfaces have moved, the pair 
+		   is checked only when the latter of them is handled */
+		for (Neighborhood n : this.moved) {
+			Coord loc = n.ni.getLocation();
+			n.x = loc.getX();
+			n.y = loc.getY();
+			n.range = n.ni.getTransmitRange();
+			n.isMoved = false;
+			
+			this.finder.current = n;
+			forEachCandidate(n.ni, this.finder);
+		}
+		
+		this.moved.clear();
+	}
+
+	/**
+	 * Returns true if two interfaces are within the range of each other,
+	 * i.e., closer than the smaller one of their ranges
+	 */
+	private boolean isWithinRange(Neighborhood a, Neighborhood b) {
+		double smallerRange = Math.min(a.ni.getTransmitRange(), 
+				b.ni.getTransmitRange());
+		return a.ni.getLocation().distance(b.ni.getLocation()) <= 
+			smallerRange;
+	}
+
+	/**
+	 * Marks a neighborhood to be updated on the next query
+	 */
+	private void setMoved(Neighborhood n) {
+		n.isMoved = true;
+		this.moved.add(n);
+	}
+
+	/**
+	 * Returns the neighborhood of an interface or null if the interface 
+	 * is not in this grid
+	 */
+	private Neighborhood getNeighborhood(NetworkInterface ni) {
+		return this.neighborhoods.get(ni);
+	}
+
+	/**
+	 * Visitor that checks if the visited interfaces are within range of
+	 * the current (moved) interface and adds them to each other's 
+	 * neighborhoods if they are. Interfaces that have moved but have not
+	 * been handled yet are skipped; the pair is checked when the other
+	 * interface is handled.
+	 */
+	private class NeighborFinder implements InterfaceVisitor {
+		private Neighborhood current;
+
+		public void visit(NetworkInterface other) {
+			Neighborhood o = getNeighborhood(other);
+			if (o == current || o.isMoved) {
+				return;
+			}
+			if (isWithinRange(current, o)) {
+				current.addNear(other);
+				o.addNear(current.ni);
+			}
+		}
+	}
+
+	/**
+	 * Interfaces within range of one interface and the location and 
+	 * range that were used for finding them.
+	 */
+	private static class Neighborhood {
+		private NetworkInterface ni;
+		/** interfaces within range, ordered by their address */
+		private List<NetworkInterface> near;
+		private double x;
+		private double y;
+		private double range;
+		/** has the interface moved since the neighborhood was updated */
+		private boolean isMoved;
+
+		private Neighborhood(NetworkInterface ni) {
+			this.ni = ni;
+			this.near = new ArrayList<NetworkInterface>();
+		}
+
+		/**
+		 * Adds an interface to the neighbors (keeping the address order)
+		 */
+		private void addNear(NetworkInterface other) {
+			int i = indexOf(other);
+			if (i < 0) {
+				this.near.add(-(i + 1), other);
+			}
+		}
+
+		/**
+		 * Removes an interface from the neighbors (if it is there)
+		 */
+		private void removeNear(NetworkInterface other) {
+			int i = indexOf(other);
+			if (i >= 0) {
+				this.near.remove(i);
+			}
+		}
+
+		/**
+		 * Binary searches the neighbors for an interface by its address.
+		 * Interfaces are compared by identity, so different interfaces
+		 * with the same address don't replace each other.
+		 * @return Index of the interface, or (-(insertion point) - 1) if
+		 * it is not among the neighbors
+		 */
+		private int indexOf(NetworkInterface other) {
+			int address = other.getAddress();
+			int low = 0;
+			int high = this.near.size() - 1;
+			while (low <= high) { // first neighbor with at least the address
+				int mid = (low + high) >>> 1;
+				if (this.near.get(mid).getAddress() < address) {
+					low = mid + 1;
+				}
+				else {
+					high = mid - 1;
+				}
+			}
+			for (int size = this.near.size(); low < size && 
+					this.near.get(low).getAddress() == address; low++) {
+				if (this.near.get(low) == other) {
+					return low;
+				}
+			}
+			return -(low + 1);
+		}
+	}
+}
@@ -0,0 +1,22 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package interfaces;
+
+import core.NetworkInterface;
+
+/**
+ * Interface for classes that want to go through the network interfaces 
+ * a {@link ConnectivityOptimizer} finds without having them collected to
+ * a new collection first.
+ * @see ConnectivityOptimizer#forEachNear(NetworkInterface, InterfaceVisitor)
+ */
+public interface InterfaceVisitor {
+
+	/**
+	 * Method is called for every interface that is visited
+	 * @param ni The interface
+	 */
+	public void visit(NetworkInterface ni);
+}
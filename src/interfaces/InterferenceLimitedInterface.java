@@ -4,8 +4,6 @@
  */
 package interfaces;
 
-import java.util.Collection;
-
 import core.Connection;
 import core.DTNHost;
 import core.NetworkInterface;
@@ -89,16 +87,13 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 
 			if (!isWithinRange(anotherInterface)) {
 				disconnect(con,anotherInterface);
-				connections.remove(i);
+				removeConnection(i);
 			} else {
 				i++;
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces = 
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) 
-			connect(i);
+		connectToNearInterfaces();
 
 		// Find the current number of transmissions
 		// (to calculate the current transmission speed
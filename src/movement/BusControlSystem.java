@@ -4,11 +4,13 @@
  */
 package movement;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 
 import movement.map.SimMap;
+import movement.map.SpatialIndex;
 import core.Coord;
 import core.DTNSim;
 
@@ -27,6 +29,10 @@ public class BusControlSystem {
 	private HashMap<Integer, BusMovement> busses;
 	private HashMap<Integer, BusTravellerMovement> travellers;
 	private List<Coord> busStops;
+	/** bus stops in a list indexed by {@link #busStopIndex} */
+	private List<Coord> indexedBusStops;
+	/** index for finding the closest bus stops (null if not created yet) */
+	private SpatialIndex busStopIndex;
 	
 	private SimMap simMap;
 	
@@ -139,6 +145,21 @@ public class BusControlSystem {
 	 */
 	public void setBusStops(List<Coord> busStops) {
 		this.busStops = busStops;
+		this.busStopIndex = null;
+	}
+	
+	/**
+	 * Returns the bus stop closest to a location. If many stops are equally
+	 * close, the first one of them in the bus stop list is returned.
+	 * @param location The location
+	 * @return A copy of the closest bus stop's coordinates
+	 */
+	public Coord getClosestBusStop(Coord location) {
+		if (busStopIndex == null) {
+			indexedBusStops = new ArrayList<Coord>(busStops);
+			busStopIndex = new SpatialIndex(indexedBusStops);
+		}
+		return indexedBusStops.get(busStopIndex.nearest(location)).clone();
 	}
 	
 }
@@ -73,7 +73,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 			probTakeOtherBus = settings.getDouble(PROBABILITY_TAKE_OTHER_BUS);
 		}
 		cbtd = new ContinueBusTripDecider(rng, probabilities);
-		pathFinder = new DijkstraPathFinder(null);
+		pathFinder = newPathFinder(null);
 		takeBus = true;
 	}
 	
@@ -101,13 +101,11 @@ public class BusTravellerMovement extends MapBasedMovement implements
 	@Override
 	public Coord getInitialLocation() {
 		
-		MapNode[] mapNodes = (MapNode[])getMap().getNodes().
-			toArray(new MapNode[0]);
-		int index = rng.nextInt(mapNodes.length - 1);
-		location = mapNodes[index].getLocation().clone();
+		List<MapNode> mapNodes = getMap().getNodes();
+		int index = rng.nextInt(mapNodes.size() - 1);
+		location = mapNodes.get(index).getLocation().clone();
 		
-		List<Coord> allStops = controlSystem.getBusStops();
-		Coord closestToNode = getClosestCoordinate(allStops, location.clone());
+		Coord closestToNode = controlSystem.getClosestBusStop(location);
 		latestBusStop = closestToNode.clone();
 		
 		return location.clone();
@@ -273,27 +271,6 @@ public class BusTravellerMovement extends MapBasedMovement implements
 		}	
 	}
 
-	/**
-	 * Help method to find the closest coordinate from a list of coordinates,
-	 * to a specific location
-	 * @param allCoords list of coordinates to compare
-	 * @param coord destination node
-	 * @return closest to the destination
-	 */
-	private static Coord getClosestCoordinate(List<Coord> allCoords, 
-			Coord coord) {
-		Coord closestCoord = null;
-		double minDistance = Double.POSITIVE_INFINITY;
-		for (Coord temp : allCoords) {
-			double distance = temp.distance(coord);
-			if (distance < minDistance) {
-				minDistance = distance;
-				closestCoord = temp;
-			}
-		}
-		return closestCoord.clone();
-	}
-	
 	/**
 	 * Sets the next route for the traveller, so that it can decide wether it 
 	 * should take the bus or not. 
@@ -303,10 +280,8 @@ public class BusTravellerMovement extends MapBasedMovement implements
 	public void setNextRoute(Coord nodeLocation, Coord nodeDestination) {
 			
 		// Find closest stops to current location and destination
-		List<Coord> allStops = controlSystem.getBusStops();
-		
-		Coord closestToNode = getClosestCoordinate(allStops, nodeLocation);
-		Coord closestToDestination = getClosestCoordinate(allStops, 
+		Coord closestToNode = controlSystem.getClosestBusStop(nodeLocation);
+		Coord closestToDestination = controlSystem.getClosestBusStop(
 				nodeDestination);
 		
 		// Check if it is shorter to walk than take the bus 
@@ -30,7 +30,7 @@ public class CarMovement extends MapBasedMovement implements
 	 */
 	public CarMovement(Settings settings) {
 		super(settings);
-		pathFinder = new DijkstraPathFinder(getOkMapNodeTypes());
+		pathFinder = newPathFinder(getOkMapNodeTypes());
 	}
 	
 	/**
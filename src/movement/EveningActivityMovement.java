@@ -72,7 +72,7 @@ public class EveningActivityMovement extends MapBasedMovement
 	public EveningActivityMovement(Settings settings) {
 		super(settings);
 		super.backAllowed = false;
-		pathFinder = new DijkstraPathFinder(null);
+		pathFinder = newPathFinder(null);
 		mode = WALKING_TO_MEETING_SPOT_MODE;
 		
 		nrOfMeetingSpots = settings.getInt(NR_OF_MEETING_SPOTS_SETTING);
@@ -80,8 +80,7 @@ public class EveningActivityMovement extends MapBasedMovement
 		minGroupSize = settings.getInt(MIN_GROUP_SIZE_SETTING);
 		maxGroupSize = settings.getInt(MAX_GROUP_SIZE_SETTING);
 		
-		MapNode[] mapNodes = (MapNode[])getMap().getNodes().
-			toArray(new MapNode[0]);
+		List<MapNode> mapNodes = getMap().getNodes();
 		
 		String shoppingSpotsFile = null;
 		try {
@@ -94,9 +93,9 @@ public class EveningActivityMovement extends MapBasedMovement
 		
 		if (shoppingSpotsFile == null) {
 			meetingSpotLocations = new LinkedList<Coord>();
-			for (int i=0; i<mapNodes.length; i++) {
-				if ((i % (mapNodes.length/nrOfMeetingSpots)) == 0) {
-					startAtLocation = mapNodes[i].getLocation().clone();
+			for (int i=0; i<mapNodes.size(); i++) {
+				if ((i % (mapNodes.size()/nrOfMeetingSpots)) == 0) {
+					startAtLocation = mapNodes.get(i).getLocation().clone();
 					meetingSpotLocations.add(startAtLocation.clone());
 				}	
 			}
@@ -129,6 +128,16 @@ public class EveningActivityMovement extends MapBasedMovement
 		scs.addEveningActivityNode(this);
 		scs.setMeetingSpots(meetingSpotLocations);
 		
+		if (settings.contains(PRECOMPUTE_PATHS_S) && 
+				settings.getBoolean(PRECOMPUTE_PATHS_S)) {
+			for (Coord spot : meetingSpotLocations) {
+				MapNode spotNode = getMap().getNodeByCoord(spot);
+				if (spotNode != null) {
+					pathFinder.addPrecomputedSource(spotNode);
+				}
+			}
+		}
+		
 		maxPathLength = 100;
 		minPathLength = 10;
 		
@@ -161,10 +170,9 @@ public class EveningActivityMovement extends MapBasedMovement
 	@Override
 	public Coord getInitialLocation() {
 		
-		MapNode[] mapNodes = (MapNode[])getMap().getNodes().
-			toArray(new MapNode[0]);
-		int index = rng.nextInt(mapNodes.length - 1);
-		lastWaypoint = mapNodes[index].getLocation().clone();
+		List<MapNode> mapNodes = getMap().getNodes();
+		int index = rng.nextInt(mapNodes.size() - 1);
+		lastWaypoint = mapNodes.get(index).getLocation().clone();
 		return lastWaypoint.clone();
 	}
 
@@ -39,6 +39,7 @@ public class HomeActivityMovement extends MapBasedMovement
 	
 	private int mode;
 	private DijkstraPathFinder pathFinder;
+	private boolean precomputePaths;
 	
 	private int distance;
 	
@@ -57,7 +58,9 @@ public class HomeActivityMovement extends MapBasedMovement
 	public HomeActivityMovement(Settings settings) {
 		super(settings);
 		distance = 100;
-		pathFinder = new DijkstraPathFinder(null);
+		pathFinder = newPathFinder(null);
+		precomputePaths = settings.contains(PRECOMPUTE_PATHS_S) && 
+			settings.getBoolean(PRECOMPUTE_PATHS_S);
 		mode = WALKING_HOME_MODE;	
 		
 		String homeLocationsFile = null;
@@ -70,10 +73,9 @@ public class HomeActivityMovement extends MapBasedMovement
 		timeDiffSTD = settings.getInt(STD_FOR_TIME_DIFF_SETTING);
 		
 		if (homeLocationsFile == null) {
-			MapNode[] mapNodes = (MapNode[])getMap().getNodes().
-				toArray(new MapNode[0]);
-			int homeIndex = rng.nextInt(mapNodes.length - 1);
-			homeLocation = mapNodes[homeIndex].getLocation().clone();
+			List<MapNode> mapNodes = getMap().getNodes();
+			int homeIndex = rng.nextInt(mapNodes.size() - 1);
+			homeLocation = mapNodes.get(homeIndex).getLocation().clone();
 		} else {
 			try {
 				allHomes = new LinkedList<Coord>();
@@ -118,20 +120,27 @@ public class HomeActivityMovement extends MapBasedMovement
 		super(proto);
 		this.distance = proto.distance;
 		this.pathFinder = proto.pathFinder;
+		this.precomputePaths = proto.precomputePaths;
 		this.mode = proto.mode;
 		
 		this.timeDiffSTD = proto.timeDiffSTD;
 		
 		if (proto.allHomes == null) {
-			MapNode[] mapNodes = (MapNode[])getMap().getNodes().
-				toArray(new MapNode[0]);
-			int homeIndex = rng.nextInt(mapNodes.length - 1);
-			homeLocation = mapNodes[homeIndex].getLocation().clone();
+			List<MapNode> mapNodes = getMap().getNodes();
+			int homeIndex = rng.nextInt(mapNodes.size() - 1);
+			homeLocation = mapNodes.get(homeIndex).getLocation().clone();
 		} else {
 			this.allHomes = proto.allHomes;
 			homeLocation = allHomes.get(rng.nextInt(allHomes.size())).clone();
 		}
 		
+		if (precomputePaths) {
+			MapNode homeNode = getMap().getNodeByCoord(homeLocation);
+			if (homeNode != null) {
+				pathFinder.addPrecomputedSource(homeNode);
+			}
+		}
+		
 		if (timeDiffSTD == -1) {
 			timeDifference = rng.nextInt(DAY_LENGTH) - DAY_LENGTH/2;
 		} else if (timeDiffSTD == 0) {
@@ -4,19 +4,21 @@
  */
 package movement;
 
+import input.BinaryMapCache;
 import input.WKTMapReader;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 import java.util.Set;
 import java.util.Vector;
 
+import movement.map.AStarPathFinder;
+import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
@@ -45,6 +47,13 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	public static final String NROF_FILES_S = "nrofMapFiles";
 	/** map file -setting id ({@value})*/
 	public static final String FILE_S = "mapFile";
+	/** 
+	 * map cache -setting id ({@value}). Boolean valued. If true, the map data
+	 * is stored to a binary cache file next to the first map file and read
+	 * from there as long as the map files don't change 
+	 * (see {@link BinaryMapCache}). Default is false.
+	 */
+	public static final String MAP_CACHE_S = "mapCache";
 	
 	/** 
 	 * Per node group setting for selecting map node types that are OK for
@@ -55,8 +64,32 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	 */
 	public static final String MAP_SELECT_S = "okMaps";
 	
+	/** 
+	 * Per node group setting for precomputing the shortest paths from the 
+	 * points of interest (homes, offices and meeting spots) of the activity
+	 * based movement models ({@value}). The paths are computed in parallel 
+	 * before they are first used and also the other movement models that 
+	 * use the same map node types (e.g., cars driving between the points of
+	 * interest) read them from the tables. The tables take four bytes of 
+	 * memory per map node and point of interest. Default is false.
+	 */
+	public static final String PRECOMPUTE_PATHS_S = "precomputePaths";
+	
+	/** 
+	 * Per node group setting for selecting the shortest path search of the
+	 * movement models that use one ({@value}). Valid values are 
+	 * {@link #DIJKSTRA_PATH_FINDER} (default) and {@link #A_STAR_PATH_FINDER}.
+	 */
+	public static final String PATH_FINDER_S = "pathFinder";
+	/** Path finder setting value for the Dijkstra's algorithm ({@value}) */
+	public static final String DIJKSTRA_PATH_FINDER = "Dijkstra";
+	/** Path finder setting value for the A* search ({@value}) */
+	public static final String A_STAR_PATH_FINDER = "AStar";
+	
 	/** the indexes of the OK map files or null if all maps are OK */
 	private int [] okMapNodeTypes;
+	/** should the shortest paths be searched with A* */
+	private boolean aStarPaths;
 	
 	/** how many map files are read */
 	private int nrofMapFilesRead = 0;
@@ -73,6 +106,7 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		super(settings);
 		map = readMap();
 		readOkMapNodeTypes(settings);
+		readPathFinder(settings);
 		maxPathLength = 100;
 		minPathLength = 10;
 		backAllowed = false;
@@ -90,6 +124,7 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		map = newMap;
 		this.nrofMapFilesRead = nrofMaps;
 		readOkMapNodeTypes(settings);
+		readPathFinder(settings);
 		maxPathLength = 100;
 		minPathLength = 10;
 		backAllowed = false;
@@ -122,6 +157,25 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		}		
 	}
 	
+	/**
+	 * Reads the path finder selection from settings
+	 * @param settings The settings where the selection is read
+	 */
+	private void readPathFinder(Settings settings) {
+		this.aStarPaths = false;
+		if (settings.contains(PATH_FINDER_S)) {
+			String finder = settings.getSetting(PATH_FINDER_S);
+			if (finder.equals(A_STAR_PATH_FINDER)) {
+				this.aStarPaths = true;
+			}
+			else if (!finder.equals(DIJKSTRA_PATH_FINDER)) {
+				throw new SettingsError("Unknown path finder '" + finder + 
+						"' for setting " + 
+						settings.getFullPropertyName(PATH_FINDER_S));
+			}
+		}
+	}
+	
 	/**
 	 * Copyconstructor.
 	 * @param mbm The MapBasedMovement object to base the new object to 
@@ -129,6 +183,7 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	protected MapBasedMovement(MapBasedMovement mbm) {
 		super(mbm);
 		this.okMapNodeTypes = mbm.okMapNodeTypes;
+		this.aStarPaths = mbm.aStarPaths;
 		this.map = mbm.map;
 		this.minPathLength = mbm.minPathLength;
 		this.maxPathLength = mbm.maxPathLength;
@@ -177,6 +232,20 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		return okMapNodeTypes;
 	}
 	
+	/**
+	 * Creates a shortest path finder of the type selected with the 
+	 * {@link #PATH_FINDER_S} setting
+	 * @param okMapNodes The map node types that are OK for paths or null if
+	 * all nodes are OK
+	 * @return The path finder
+	 */
+	protected DijkstraPathFinder newPathFinder(int [] okMapNodes) {
+		if (aStarPaths) {
+			return new AStarPathFinder(okMapNodes);
+		}
+		return new DijkstraPathFinder(okMapNodes);
+	}
+	
 	@Override
 	public Path getPath() {
 		Path p = new Path(generateSpeed());
@@ -285,11 +354,30 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 
 		try {
 			int nrofMapFiles = settings.getInt(NROF_FILES_S);
+			List<File> mapFiles = new ArrayList<File>();
 
 			for (int i = 1; i <= nrofMapFiles; i++ ) {
 				String pathFile = settings.getSetting(FILE_S + i);
 				cachedMapFiles.add(pathFile);
-				r.addPaths(new File(pathFile), i);
+				mapFiles.add(new File(pathFile));
+			}
+			
+			BinaryMapCache binaryCache = null;
+			simMap = null;
+			if (settings.contains(MAP_CACHE_S) && 
+					settings.getBoolean(MAP_CACHE_S)) {
+				binaryCache = new BinaryMapCache(mapFiles);
+				simMap = binaryCache.read();
+			}
+			
+			if (simMap == null) { // no (valid) binary cache -> parse WKT
+				for (int i = 1; i <= nrofMapFiles; i++ ) {
+					r.addPaths(mapFiles.get(i - 1), i);
+				}
+				simMap = r.getMap();
+				if (binaryCache != null) {
+					binaryCache.write(simMap);
+				}
 			}
 			
 			nrofMapFilesRead = nrofMapFiles;
@@ -297,7 +385,6 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 			throw new SimError(e.toString(),e);
 		}
 
-		simMap = r.getMap();
 		checkMapConnectedness(simMap.getNodes());
 		// mirrors the map (y' = -y) and moves its upper left corner to origo
 		simMap.mirror();
@@ -410,19 +497,7 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	}
 
 	public void setLocation(Coord lastWaypoint) {
-		// TODO: This should be optimized
-		MapNode nearest = null;
-		double minDistance = Double.MAX_VALUE;
-		Iterator<MapNode> iterator = getMap().getNodes().iterator();
-		while (iterator.hasNext()) {
-			MapNode temp = iterator.next();
-			double distance = temp.getLocation().distance(lastWaypoint);
-			if (distance < minDistance) {
-				minDistance = distance;
-				nearest = temp;
-			}
-		}
-		lastMapNode = nearest;
+		lastMapNode = getMap().getNearestNode(lastWaypoint);
 	}
 
 	public boolean isReady() {
@@ -60,7 +60,7 @@ public class MapRouteMovement extends MapBasedMovement implements
 		int type = settings.getInt(ROUTE_TYPE_S);
 		allRoutes = MapRoute.readRoutes(fileName, type, getMap());
 		nextRouteIndex = 0;
-		pathFinder = new DijkstraPathFinder(getOkMapNodeTypes());
+		pathFinder = newPathFinder(getOkMapNodeTypes());
 		this.route = this.allRoutes.get(this.nextRouteIndex).replicate();
 		if (this.nextRouteIndex >= this.allRoutes.size()) {
 			this.nextRouteIndex = 0;
@@ -53,6 +53,7 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 	private int startedWorkingTime;
 	private boolean ready;;
 	private DijkstraPathFinder pathFinder;
+	private boolean precomputePaths;
 	
 	private ParetoRNG paretoRNG;
 	
@@ -86,7 +87,9 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 		officeMaxWaitTime = settings.getDouble(OFFICE_MAX_WAIT_TIME_SETTING);
 		
 		startedWorkingTime = -1;
-		pathFinder = new DijkstraPathFinder(null);
+		pathFinder = newPathFinder(null);
+		precomputePaths = settings.contains(PRECOMPUTE_PATHS_S) && 
+			settings.getBoolean(PRECOMPUTE_PATHS_S);
 		mode = WALKING_TO_OFFICE_MODE;
 		
 		String officeLocationsFile = null;
@@ -98,11 +101,10 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 		}
 		
 		if (officeLocationsFile == null) {
-			MapNode[] mapNodes = (MapNode[])getMap().getNodes().
-				toArray(new MapNode[0]);
-			int officeIndex = rng.nextInt(mapNodes.length - 1) /
-				(mapNodes.length/nrOfOffices);
-			officeLocation = mapNodes[officeIndex].getLocation().clone();
+			List<MapNode> mapNodes = getMap().getNodes();
+			int officeIndex = rng.nextInt(mapNodes.size() - 1) /
+				(mapNodes.size()/nrOfOffices);
+			officeLocation = mapNodes.get(officeIndex).getLocation().clone();
 		} else {
 			try {
 				allOffices = new LinkedList<Coord>();
@@ -140,20 +142,27 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 		startedWorkingTime = -1;
 		this.distance = proto.distance;
 		this.pathFinder = proto.pathFinder;
+		this.precomputePaths = proto.precomputePaths;
 		this.mode = proto.mode;
 		
 		if (proto.allOffices == null) {
-			MapNode[] mapNodes = (MapNode[])getMap().getNodes().
-				toArray(new MapNode[0]);
-			int officeIndex = rng.nextInt(mapNodes.length - 1) / 
-				(mapNodes.length/nrOfOffices);
-			officeLocation = mapNodes[officeIndex].getLocation().clone();
+			List<MapNode> mapNodes = getMap().getNodes();
+			int officeIndex = rng.nextInt(mapNodes.size() - 1) / 
+				(mapNodes.size()/nrOfOffices);
+			officeLocation = mapNodes.get(officeIndex).getLocation().clone();
 		} else {
 			this.allOffices = proto.allOffices;
 			officeLocation = allOffices.get(
 					rng.nextInt(allOffices.size())).clone();
 		}
 		
+		if (precomputePaths) {
+			MapNode officeNode = getMap().getNodeByCoord(officeLocation);
+			if (officeNode != null) {
+				pathFinder.addPrecomputedSource(officeNode);
+			}
+		}
+		
 		officeWaitTimeParetoCoeff = proto.officeWaitTimeParetoCoeff;
 		officeMinWaitTime = proto.officeMinWaitTime;
 		officeMaxWaitTime = proto.officeMaxWaitTime;
@@ -29,7 +29,7 @@ public class ShortestPathMapBasedMovement extends MapBasedMovement implements
 	 */
 	public ShortestPathMapBasedMovement(Settings settings) {
 		super(settings);
-		this.pathFinder = new DijkstraPathFinder(getOkMapNodeTypes());
+		this.pathFinder = newPathFinder(getOkMapNodeTypes());
 		this.pois = new PointsOfInterest(getMap(), getOkMapNodeTypes(),
 				settings, rng);
 	}
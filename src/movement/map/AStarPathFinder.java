@@ -0,0 +1,24 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package movement.map;
+
+/**
+ * Shortest path finder that uses the A* search with the straight line 
+ * distance to the destination as the heuristic. Finds paths of the same 
+ * length as {@link DijkstraPathFinder} but visits fewer map nodes, which
+ * matters on large maps. If there are many shortest paths, the chosen 
+ * path may differ from the one the Dijkstra's algorithm chooses.
+ */
+public class AStarPathFinder extends DijkstraPathFinder {
+
+	/**
+	 * Constructor.
+	 * @param okMapNodes The map node types that are OK for paths or null if
+	 * all nodes are OK
+	 */
+	public AStarPathFinder(int [] okMapNodes) {
+		super(okMapNodes, true);
+	}
+}
@@ -4,63 +4,84 @@
  */
 package movement.map;
 
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
 
 /**
- * Implementation of the Dijkstra's shortest path algorithm.
+ * Implementation of the Dijkstra's shortest path algorithm. The searches
+ * are run on a compact, array based, presentation of the map (see 
+ * {@link MapGraph}) that is shared by all path finders. Found paths are 
+ * cached there, so finding the same path again (e.g., by another node 
+ * moving between the same places) doesn't require a new search. The 
+ * shortest paths from frequently used source nodes (e.g., homes and offices)
+ * can be precomputed (see {@link #addPrecomputedSource(MapNode)}) so that
+ * finding a path from them is only a walk in a table.
  */
 public class DijkstraPathFinder {
-	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distances;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<MapNode> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<MapNode> unvisited;
-	/** Map of previous nodes on the shortest path(s) */
-	private Map<MapNode, MapNode> prevNodes;
-
+	/** Mask of the map node types that are OK for paths */
+	private int okTypes;
+	
 	private int [] okMapNodes;
 	
+	/** Is the search guided by the distance to the destination (A*) */
+	private boolean aStar;
+	
+	/** Source nodes whose shortest paths are precomputed */
+	private Set<MapNode> precomputedSources;
+	/** Graphs where the paths from all the sources are precomputed */
+	private Set<MapGraph> precomputedGraphs;
+	
 	/**
 	 * Constructor.
 	 * @param okMapNodes The map node types that are OK for paths or null if
 	 * all nodes are OK
 	 */
 	public DijkstraPathFinder(int [] okMapNodes) {
+		this(okMapNodes, false);
+	}
+	
+	/**
+	 * Constructor for path finders that use a different search.
+	 * @param okMapNodes The map node types that are OK for paths or null if
+	 * all nodes are OK
+	 * @param aStar If true, the A* search is used instead of the Dijkstra's
+	 * algorithm
+	 */
+	protected DijkstraPathFinder(int [] okMapNodes, boolean aStar) {
 		super();
 		this.okMapNodes = okMapNodes;
+		this.aStar = aStar;
+		if (okMapNodes == null) {
+			this.okTypes = MapGraph.ALL_TYPES;
+		}
+		else {
+			this.okTypes = 0;
+			for (int type : okMapNodes) {
+				this.okTypes |= 1 << type;
+			}
+		}
+		this.precomputedSources = Collections.newSetFromMap(
+				new IdentityHashMap<MapNode, Boolean>());
+		this.precomputedGraphs = Collections.newSetFromMap(
+				new IdentityHashMap<MapGraph, Boolean>());
 	}
-
+	
 	/**
-	 * Initializes a new search with a source node
-	 * @param node The path's source node
+	 * Adds a source node whose shortest paths to all other nodes are 
+	 * precomputed. The paths from all the added sources are computed in 
+	 * parallel when this path finder is used the next time and they are 
+	 * shared with all path finders that use the same map node types. 
+	 * Each source takes four bytes of memory per map node.
+	 * @param source The source node
 	 */
-	private void initWith(MapNode node) {
-		assert (okMapNodes != null ? node.isType(okMapNodes) : true);
-		
-		// create needed data structures
-		this.unvisited = new PriorityQueue<MapNode>(PQ_INIT_SIZE, 
-				new DistanceComparator());
-		this.visited = new HashSet<MapNode>();
-		this.prevNodes = new HashMap<MapNode, MapNode>();
-		this.distances = new DistanceMap();
-		
-		// set distance to source 0 and initialize unvisited queue
-		this.distances.put(node, 0);
-		this.unvisited.add(node);
+	public void addPrecomputedSource(MapNode source) {
+		if (precomputedSources.add(source)) {
+			precomputedGraphs.clear();
+		}
 	}
 	
 	/**
@@ -77,152 +98,38 @@ public class DijkstraPathFinder {
 			path.add(from); // return a list containing only source node
 			return path;
 		}
+		assert (okMapNodes != null ? from.isType(okMapNodes) : true);
 		
-		initWith(from);
-		MapNode node = null;
-		
-		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (node == to) {
-				break; // we found the destination -> no need to search further
-			}
-			
-			visited.add(node); // mark the node as visited
-			relax(node); // add/update neighbor nodes' distances
+		MapGraph graph = MapGraph.of(from); // has all nodes reachable from it
+		if (!precomputedSources.isEmpty() && precomputedGraphs.add(graph)) {
+			precompute(graph);
 		}
-		
-		// now we either have the path or such path wasn't available
-		if (node == to) { // found a path
-			path.add(0,to); 
-			MapNode prev = prevNodes.get(to); 
-			while (prev != from) { 
-				path.add(0, prev);	// always put previous node to beginning
-				prev = prevNodes.get(prev);
-			}
-			
-			path.add(0, from); // finally put the source node to first node
+		int toIndex = graph.indexOf(to);
+		if (toIndex < 0) {
+			return path; // destination is not reachable from the source
 		}
 		
-		return path;
-	}
-	
-	/**
-	 * Relaxes the neighbors of a node (updates the shortest distances).
-	 * @param node The node whose neighbors are relaxed
-	 */
-	private void relax(MapNode node) {
-		double nodeDist = distances.get(node);
-		for (MapNode n : node.getNeighbors()) {
-			if (visited.contains(n)) {
-				continue; // skip visited nodes
-			}
-			
-			if (okMapNodes != null && !n.isType(okMapNodes)) {
-				continue; // skip nodes that are not OK
-			}
-			
-			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
-			
-			if (distances.get(n) > nDist) { // stored distance > found dist?
-				prevNodes.put(n, node);
-				setDistance(n, nDist);
-			}
+		for (int i : graph.getShortestPath(graph.indexOf(from), toIndex, 
+				okTypes, aStar)) {
+			path.add(graph.getNode(i));
 		}
-	}
-	
-	/**
-	 * Sets the distance from source node to a node
-	 * @param n The node whose distance is set
-	 * @param distance The distance of the node from the source node
-	 */
-	private void setDistance(MapNode n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distances.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
-	}
-	
-	/**
-	 * Returns the (euclidean) distance between the two map nodes
-	 * @param from The first node
-	 * @param to The second node
-	 * @return Euclidean distance between the two map nodes
-	 */
-	private double getDistance(MapNode from, MapNode to) {
-		return from.getLocation().distance(to.getLocation());
-	}
-	
-	/**
-	 * Comparator that compares two map nodes by their distance from
-	 * the source node.
-	 */
-	private class DistanceComparator implements Comparator<MapNode> {
 		
-		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
-		 */
-		public int compare(MapNode node1, MapNode node2) {
-			double dist1 = distances.get(node1);
-			double dist2 = distances.get(node2);
-			
-			if (dist1 > dist2) {
-				return 1;
-			}
-			else if (dist1 < dist2) {
-				return -1;
-			}
-			else {
-				return node1.compareTo(node2);
-			}
-		}
+		return path;
 	}
 	
 	/**
-	 * Simple Map implementation for storing distances. 
+	 * Precomputes the paths from the sources that are in the given graph
+	 * @param graph The graph
 	 */
-	private class DistanceMap {
-		private HashMap<MapNode, Double> map;
-		
-		/**
-		 * Constructor. Creates an empty distance map
-		 */
-		public DistanceMap() {
-			this.map = new HashMap<MapNode, Double>(); 
-		}
-		
-		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link DijkstraPathFinder#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
-		 */
-		public double get(MapNode node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
+	private void precompute(MapGraph graph) {
+		int[] sources = new int[precomputedSources.size()];
+		int nrofSources = 0;
+		for (MapNode source : precomputedSources) {
+			int index = graph.indexOf(source);
+			if (index >= 0) {
+				sources[nrofSources++] = index;
 			}
-			else {
-				return INFINITY;
-			}
-		}
-		
-		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
-		 */
-		public void  put(MapNode node, double distance) {
-			map.put(node, distance);
-		}
-		
-		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
-		 */
-		public String toString() {
-			return map.toString();
 		}
+		graph.precompute(Arrays.copyOf(sources, nrofSources), okTypes);
 	}
-}
\ No newline at end of file
+}
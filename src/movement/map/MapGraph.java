@@ -0,0 +1,577 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package movement.map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import core.SimError;
+
+/**
+ * Compact presentation of the map nodes reachable from a node for the
+ * shortest path searches of {@link DijkstraPathFinder}. The nodes are
+ * numbered and their neighbors are kept in flat arrays (compressed sparse
+ * row format) with precomputed edge lengths. The search state arrays and
+ * a bounded cache of the found paths are shared by all path finders that
+ * search the same nodes. Shortest path trees from chosen source nodes
+ * can also be precomputed (see {@link #precompute(int[], int)}), after
+ * which the paths from those sources are read from the trees' predecessor
+ * tables. Searches can also be guided by the straight line distance to
+ * the destination (A* search). A graph becomes invalid when any map node 
+ * gets new neighbors or a map is translated or mirrored.
+ */
+class MapGraph {
+	/** Value of an OK node type mask that accepts all nodes */
+	static final int ALL_TYPES = -1;
+	/** Maximum number of paths in the path cache of a graph */
+	private static final int PATH_CACHE_SIZE = 10000;
+
+	/** Version of the map node data; changes when any map changes */
+	private static int mapVersion = 0;
+
+	/** Map data version this graph was built from */
+	private int version;
+	/** The nodes in the order of their indexes */
+	private MapNode[] nodes;
+	/** Indexes of the nodes that were later indexed by another graph */
+	private IdentityHashMap<MapNode, Integer> reindexed;
+	/** Type masks of the nodes */
+	private int[] types;
+	/** X coordinates of the nodes */
+	private double[] xs;
+	/** Y coordinates of the nodes */
+	private double[] ys;
+	/** Position of the nodes in the map nodes' natural order */
+	private int[] rank;
+	/** Index of the first edge of each node (and the number of edges) */
+	private int[] edgeStart;
+	/** Target nodes of the edges */
+	private int[] edgeTarget;
+	/** Lengths of the edges */
+	private double[] edgeLength;
+
+	/** State of the searches made on demand */
+	private Search search;
+	/** Recently found paths */
+	private PathCache pathCache;
+	/** Predecessor tables of the precomputed shortest path trees by OK
+	 * node type mask and source node index */
+	private HashMap<Integer, HashMap<Integer, int[]>> trees;
+
+	/**
+	 * Tells all graphs that map data has changed
+	 */
+	static void mapChanged() {
+		mapVersion++;
+	}
+
+	/**
+	 * Returns a valid graph that contains the given node
+	 * @param node The node
+	 * @return The graph
+	 */
+	static MapGraph of(MapNode node) {
+		if (node.graph != null && node.graph.isValid()) {
+			return node.graph;
+		}
+		return new MapGraph(node);
+	}
+
+	/**
+	 * Creates a graph of the nodes reachable from a node. The graph is
+	 * set as the graph of those nodes.
+	 * @param start The node to start from
+	 */
+	MapGraph(MapNode start) {
+		this.version = mapVersion;
+
+		List<MapNode> reachable = new ArrayList<MapNode>();
+		index(start, reachable);
+		for (int i=0; i<reachable.size(); i++) {
+			for (MapNode n : reachable.get(i).getNeighbors()) {
+				if (n.graph != this) {
+					index(n, reachable);
+				}
+			}
+		}
+
+		int n = reachable.size();
+		this.nodes = reachable.toArray(new MapNode[n]);
+		this.types = new int[n];
+		this.xs = new double[n];
+		this.ys = new double[n];
+		this.edgeStart = new int[n + 1];
+		int nrofEdges = 0;
+		for (int i=0; i<n; i++) {
+			types[i] = nodes[i].getTypeMask();
+			xs[i] = nodes[i].getLocation().getX();
+			ys[i] = nodes[i].getLocation().getY();
+			edgeStart[i] = nrofEdges;
+			nrofEdges += nodes[i].getNeighbors().size();
+		}
+		edgeStart[n] = nrofEdges;
+
+		this.edgeTarget = new int[nrofEdges];
+		this.edgeLength = new double[nrofEdges];
+		int e = 0;
+		for (MapNode node : nodes) {
+			for (MapNode neighbor : node.getNeighbors()) {
+				edgeTarget[e] = neighbor.graphIndex;
+				edgeLength[e] = node.getLocation().distance(
+						neighbor.getLocation());
+				e++;
+			}
+		}
+
+		Integer[] order = new Integer[n];
+		for (int i=0; i<n; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				return nodes[i1].compareTo(nodes[i2]);
+			}
+		});
+		this.rank = new int[n];
+		for (int i=0; i<n; i++) {
+			rank[order[i]] = i;
+		}
+
+		this.search = new Search();
+		this.pathCache = new PathCache();
+		this.trees = new HashMap<Integer, HashMap<Integer, int[]>>();
+	}
+
+	/**
+	 * Sets this graph as the graph of a node
+	 * @param node The node
+	 * @param indexed The nodes indexed so far; the node is added here
+	 */
+	private void index(MapNode node, List<MapNode> indexed) {
+		MapGraph old = node.graph;
+		if (old != null && old.isValid()) {
+			/* graphs of directed maps can overlap */
+			if (old.reindexed == null) {
+				old.reindexed = new IdentityHashMap<MapNode, Integer>();
+			}
+			old.reindexed.put(node, node.graphIndex);
+		}
+		node.graph = this;
+		node.graphIndex = indexed.size();
+		indexed.add(node);
+	}
+
+	/**
+	 * Returns true if the map data hasn't changed after building the graph
+	 * @return true if the graph is valid
+	 */
+	boolean isValid() {
+		return this.version == mapVersion;
+	}
+
+	/**
+	 * Returns the index of a node in this graph
+	 * @param node The node
+	 * @return The index or -1 if the node isn't in this graph
+	 */
+	int indexOf(MapNode node) {
+		if (node.graph == this) {
+			return node.graphIndex;
+		}
+		if (reindexed != null) {
+			Integer index = reindexed.get(node);
+			if (index != null) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the node of an index
+	 * @param index The index
+	 * @return The node
+	 */
+	MapNode getNode(int index) {
+		return nodes[index];
+	}
+
+	/**
+	 * Returns a shortest path between two nodes. Only the nodes whose type
+	 * matches the type mask are used on the path (besides the source).
+	 * @param from Index of the source node
+	 * @param to Index of the destination node
+	 * @param okTypes Mask of the OK node types or {@link #ALL_TYPES}
+	 * @param aStar If true, an A* search is used instead of the Dijkstra's 
+	 * algorithm. The paths from the sources of precomputed trees are read 
+	 * from the trees with either search.
+	 * @return Indexes of the nodes on the path, or an empty array if there
+	 * is no path. The array must not be modified.
+	 */
+	int[] getShortestPath(int from, int to, int okTypes, boolean aStar) {
+		HashMap<Integer, int[]> sourceTrees = trees.get(okTypes);
+		int[] tree = sourceTrees != null ? sourceTrees.get(from) : null;
+		if (tree != null) {
+			return walk(tree, from, to);
+		}
+
+		PathKey key = new PathKey(from, to, okTypes, aStar);
+		int[] path = pathCache.get(key);
+		if (path == null) {
+			path = search.run(from, to, okTypes, aStar) ? 
+					walk(search.prev, from, to) : new int[0];
+			pathCache.put(key, path);
+		}
+		return path;
+	}
+
+	/**
+	 * Precomputes the shortest path trees from source nodes. The trees are
+	 * computed in parallel by as many threads as there are processors. Since
+	 * a tree is built by the same search as a single path, only without
+	 * stopping at the destination, the paths read from a tree are the same
+	 * as the ones that would be searched.
+	 * @param sources Indexes of the source nodes
+	 * @param okTypes Mask of the OK node types or {@link #ALL_TYPES}
+	 */
+	void precompute(int[] sources, int okTypes) {
+		HashMap<Integer, int[]> sourceTrees = trees.get(okTypes);
+		if (sourceTrees == null) {
+			sourceTrees = new HashMap<Integer, int[]>();
+			trees.put(okTypes, sourceTrees);
+		}
+		final List<Integer> todo = new ArrayList<Integer>();
+		for (int s : sources) {
+			if (!sourceTrees.containsKey(s)) {
+				sourceTrees.put(s, null); // reserved for the result
+				todo.add(s);
+			}
+		}
+		if (todo.isEmpty()) {
+			return;
+		}
+
+		final int types = okTypes;
+		final int[][] results = new int[todo.size()][];
+		final AtomicInteger next = new AtomicInteger(0);
+		int nrofThreads = Math.min(todo.size(), 
+				Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(nrofThreads);
+		List<Future<?>> workers = new ArrayList<Future<?>>();
+		for (int t=0; t<nrofThreads; t++) {
+			workers.add(executor.submit(new Runnable() {
+				public void run() {
+					Search s = new Search();
+					for (int i = next.getAndIncrement(); i < results.length;
+							i = next.getAndIncrement()) {
+						results[i] = s.tree(todo.get(i), types);
+					}
+				}
+			}));
+		}
+
+		try {
+			for (Future<?> f : workers) {
+				f.get();
+			}
+		} catch (Exception e) {
+			throw new SimError("Precomputing shortest paths failed", e);
+		} finally {
+			executor.shutdown();
+		}
+
+		for (int i=0; i<results.length; i++) {
+			sourceTrees.put(todo.get(i), results[i]);
+		}
+	}
+
+	/**
+	 * Reads a path from a predecessor table
+	 * @param prev Predecessors of the nodes on the paths from the source
+	 * (-1 for nodes that have no path)
+	 * @param from Index of the source node
+	 * @param to Index of the destination node
+	 * @return Indexes of the nodes on the path or an empty array if there
+	 * is no path
+	 */
+	private int[] walk(int[] prev, int from, int to) {
+		if (to != from && prev[to] < 0) {
+			return new int[0];
+		}
+		int length = 1;
+		for (int n = to; n != from; n = prev[n]) {
+			length++;
+		}
+		int[] path = new int[length];
+		for (int n = to; length > 0; n = prev[n]) {
+			path[--length] = n;
+		}
+		return path;
+	}
+
+	/**
+	 * State of the Dijkstra's algorithm and A* search. Each thread that 
+	 * searches the graph needs its own search state.
+	 */
+	private class Search {
+		/** Distances of the nodes from the source of the current search */
+		private double[] dist;
+		/** Previous nodes on the shortest paths of the current search */
+		private int[] prev;
+		/** Estimated lengths of the paths to the destination through the 
+		 * nodes (the distances in the Dijkstra's algorithm) */
+		private double[] estimate;
+		/** Straight line distances of the nodes to the destination (zero in
+		 * the Dijkstra's algorithm) */
+		private double[] remaining;
+		/** Search stamp of the nodes that have a distance */
+		private int[] seen;
+		/** Search stamp of the nodes whose shortest path is known */
+		private int[] done;
+		/** Stamp of the current search */
+		private int stamp;
+		/** Binary heap of the unvisited nodes discovered so far */
+		private int[] heap;
+		/** Position of the nodes in the heap */
+		private int[] heapPos;
+		/** Number of nodes in the heap */
+		private int heapSize;
+		/** Destination of the current A* search or -1 */
+		private int target;
+
+		private Search() {
+			int n = nodes.length;
+			this.dist = new double[n];
+			this.prev = new int[n];
+			this.estimate = new double[n];
+			this.remaining = new double[n];
+			this.seen = new int[n];
+			this.done = new int[n];
+			this.stamp = 0;
+			this.heap = new int[n];
+			this.heapPos = new int[n];
+		}
+
+		/**
+		 * Runs the Dijkstra's algorithm or A* search from a source node 
+		 * until the destination is found. Nodes with equal estimates are 
+		 * visited in their natural order. Since the edge lengths are the 
+		 * straight line distances between the nodes, the A* heuristic is 
+		 * consistent and the found path is a shortest one.
+		 * @param from Index of the source node
+		 * @param to Index of the destination node or -1 to find the paths
+		 * to all the nodes
+		 * @param okTypes Mask of the OK node types
+		 * @param aStar If true, the search is guided by the straight line 
+		 * distance to the destination
+		 * @return true if the destination was found
+		 */
+		private boolean run(int from, int to, int okTypes, boolean aStar) {
+			if (++stamp == 0) { // stamps wrapped around
+				Arrays.fill(seen, 0);
+				Arrays.fill(done, 0);
+				stamp = 1;
+			}
+			this.target = (aStar && to >= 0) ? to : -1;
+			heapSize = 0;
+			dist[from] = 0;
+			remaining[from] = heuristic(from);
+			estimate[from] = remaining[from];
+			seen[from] = stamp;
+			push(from);
+
+			while (heapSize > 0) {
+				int node = pop();
+				if (node == to) {
+					return true;
+				}
+				done[node] = stamp;
+				relax(node, okTypes);
+			}
+			return false;
+		}
+
+		/**
+		 * Finds the shortest paths from a source node to all nodes
+		 * @param from Index of the source node
+		 * @param okTypes Mask of the OK node types
+		 * @return Predecessors of the nodes on the paths from the source
+		 * (-1 for the source and the nodes that have no path)
+		 */
+		private int[] tree(int from, int okTypes) {
+			run(from, -1, okTypes, false);
+			int[] tree = new int[prev.length];
+			for (int i=0; i<tree.length; i++) {
+				tree[i] = (seen[i] == stamp && i != from) ? prev[i] : -1;
+			}
+			return tree;
+		}
+
+		/**
+		 * Relaxes the edges of a node (updates the shortest distances)
+		 */
+		private void relax(int node, int okTypes) {
+			double nodeDist = dist[node];
+			for (int e = edgeStart[node]; e < edgeStart[node + 1]; e++) {
+				int n = edgeTarget[e];
+				if (done[n] == stamp) {
+					continue; // skip visited nodes
+				}
+				if (okTypes != ALL_TYPES && (types[n] & okTypes) == 0) {
+					continue; // skip nodes that are not OK
+				}
+
+				double nDist = nodeDist + edgeLength[e];
+				if (seen[n] != stamp) {
+					seen[n] = stamp;
+					dist[n] = nDist;
+					remaining[n] = heuristic(n);
+					estimate[n] = nDist + remaining[n];
+					prev[n] = node;
+					push(n);
+				}
+				else if (dist[n] > nDist) {
+					dist[n] = nDist;
+					estimate[n] = nDist + remaining[n];
+					prev[n] = node;
+					siftUp(heapPos[n]);
+				}
+			}
+		}
+
+		/**
+		 * Returns the straight line distance of a node to the destination
+		 * of an A* search or zero for the Dijkstra's algorithm
+		 */
+		private double heuristic(int node) {
+			if (target < 0) {
+				return 0;
+			}
+			double dx = xs[node] - xs[target];
+			double dy = ys[node] - ys[target];
+			return Math.sqrt(dx*dx + dy*dy);
+		}
+
+		/**
+		 * Returns true if node n1 should be visited before node n2
+		 */
+		private boolean before(int n1, int n2) {
+			if (estimate[n1] != estimate[n2]) {
+				return estimate[n1] < estimate[n2];
+			}
+			return rank[n1] < rank[n2];
+		}
+
+		private void push(int node) {
+			heap[heapSize] = node;
+			heapPos[node] = heapSize;
+			siftUp(heapSize++);
+		}
+
+		private int pop() {
+			int first = heap[0];
+			int last = heap[--heapSize];
+			if (heapSize > 0) {
+				heap[0] = last;
+				heapPos[last] = 0;
+				siftDown(0);
+			}
+			return first;
+		}
+
+		private void siftUp(int i) {
+			int node = heap[i];
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (!before(node, heap[parent])) {
+					break;
+				}
+				heap[i] = heap[parent];
+				heapPos[heap[i]] = i;
+				i = parent;
+			}
+			heap[i] = node;
+			heapPos[node] = i;
+		}
+
+		private void siftDown(int i) {
+			int node = heap[i];
+			int half = heapSize >>> 1;
+			while (i < half) {
+				int child = 2 * i + 1;
+				int right = child + 1;
+				if (right < heapSize && before(heap[right], heap[child])) {
+					child = right;
+				}
+				if (!before(heap[child], node)) {
+					break;
+				}
+				heap[i] = heap[child];
+				heapPos[heap[i]] = i;
+				i = child;
+			}
+			heap[i] = node;
+			heapPos[node] = i;
+		}
+	}
+
+	/**
+	 * Key of a path in the path cache
+	 */
+	private static class PathKey {
+		private int from;
+		private int to;
+		private int okTypes;
+		private boolean aStar;
+
+		private PathKey(int from, int to, int okTypes, boolean aStar) {
+			this.from = from;
+			this.to = to;
+			this.okTypes = okTypes;
+			this.aStar = aStar;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof PathKey)) {
+				return false;
+			}
+			PathKey k = (PathKey)o;
+			return from == k.from && to == k.to && okTypes == k.okTypes &&
+				aStar == k.aStar;
+		}
+
+		@Override
+		public int hashCode() {
+			return ((from * 31 + to) * 31 + okTypes) * 2 + (aStar ? 1 : 0);
+		}
+	}
+
+	/**
+	 * Path cache that drops the least recently used path when it is full
+	 */
+	private static class PathCache extends LinkedHashMap<PathKey, int[]> {
+		private static final long serialVersionUID = 1L;
+
+		private PathCache() {
+			super(16, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<PathKey, int[]> e) {
+			return size() > PATH_CACHE_SIZE;
+		}
+	}
+}
@@ -25,6 +25,10 @@ public class MapNode implements Comparable<MapNode> {
 	private Vector<MapNode> neighbors;
 	// bit mask of map node's types or 0 if no type's are defined
 	private int type;
+	/** Latest path finding graph that has indexed this node (or null) */
+	MapGraph graph;
+	/** Index of this node in {@link #graph} */
+	int graphIndex;
 	
 	/**
 	 * Constructor. Creates a map node to a location.
@@ -59,6 +63,14 @@ public class MapNode implements Comparable<MapNode> {
 		return (this.type & typeToBitMask(type)) != 0;
 	}
 	
+	/**
+	 * Returns the bit mask of the types of this node
+	 * @return The type mask or 0 if the node doesn't have a type
+	 */
+	int getTypeMask() {
+		return this.type;
+	}
+	
 	/**
 	 * Returns true if the node's types match any of the given types
 	 * @param types The types to check (array of values in range 
@@ -108,6 +120,7 @@ public class MapNode implements Comparable<MapNode> {
 	private void addToList(MapNode node) {
 		if (!this.neighbors.contains(node) && node != this) {
 			this.neighbors.add(node);
+			MapGraph.mapChanged();
 		}		
 	}
 	
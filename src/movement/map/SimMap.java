@@ -6,6 +6,7 @@ package movement.map;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 
@@ -28,6 +29,8 @@ public class SimMap implements Serializable {
 	
 	/** is re-hash needed before using hash mode (some coordinates changed) */
 	private boolean needsRehash = false;
+	/** index for finding the nearest nodes (null if not created yet) */
+	private transient SpatialIndex nodeIndex;
 	
 	public SimMap(Map<Coord, MapNode> nodes) {
 		this.offset = new Coord(0,0);
@@ -37,6 +40,21 @@ public class SimMap implements Serializable {
 		setBounds();
 	}
 	
+	/**
+	 * Creates a map of nodes that keeps the nodes in the given order
+	 * @param nodes The nodes of the map
+	 */
+	public SimMap(List<MapNode> nodes) {
+		this.offset = new Coord(0,0);
+		this.nodes = new ArrayList<MapNode>(nodes);
+		this.nodesMap = new Hashtable<Coord, MapNode>();
+		for (MapNode n : nodes) {
+			this.nodesMap.put(n.getLocation(), n);
+		}
+		this.isMirrored = false;
+		setBounds();
+	}
+	
 	/**
 	 * Returns all the map nodes in a list
 	 * @return all the map nodes in a list
@@ -57,11 +75,31 @@ public class SimMap implements Serializable {
 			for (MapNode node : getNodes()) {
 				nodesMap.put(node.getLocation(), node); // re-hash
 			}
+			needsRehash = false;
 		}
 	
 		return nodesMap.get(c);
 	}
 	
+	/**
+	 * Returns the MapNode nearest to given coordinates. If many nodes are
+	 * equally near, the first one of them in the node list is returned.
+	 * @param c The coordinate
+	 * @return The nearest map node or null if the map has no nodes
+	 */
+	public MapNode getNearestNode(Coord c) {
+		if (nodeIndex == null) {
+			List<Coord> locations = new ArrayList<Coord>(nodes.size());
+			for (MapNode node : nodes) {
+				locations.add(node.getLocation());
+			}
+			nodeIndex = new SpatialIndex(locations);
+		}
+		
+		int index = nodeIndex.nearest(c);
+		return index >= 0 ? nodes.get(index) : null;
+	}
+	
 	/**
 	 * Returns the upper left corner coordinate of the map
 	 * @return the upper left corner coordinate of the map
@@ -111,6 +149,8 @@ public class SimMap implements Serializable {
 		offset.translate(dx, dy);
 		
 		needsRehash = true;
+		nodeIndex = null;
+		MapGraph.mapChanged();
 	}
 	
 	/**
@@ -127,6 +167,8 @@ public class SimMap implements Serializable {
 		setBounds();
 		this.isMirrored = true;
 		needsRehash = true;
+		nodeIndex = null;
+		MapGraph.mapChanged();
 	}
 	
 	/**
@@ -0,0 +1,158 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package movement.map;
+
+import java.util.List;
+
+import core.Coord;
+
+/**
+ * Uniform grid index of coordinates for finding the nearest coordinate to
+ * a location without scanning all coordinates. The index is a snapshot of
+ * the coordinates' locations at the time it was created; it must be
+ * recreated if the coordinates move.
+ */
+public class SpatialIndex {
+	/** Average number of coordinates per grid cell */
+	private static final int COORDS_PER_CELL = 2;
+
+	private double[] xs;
+	private double[] ys;
+	private double minX;
+	private double minY;
+	private double cellWidth;
+	private double cellHeight;
+	private int cols;
+	private int rows;
+	/** Index of the first coordinate of each cell in {@link #cellCoords} */
+	private int[] cellStart;
+	/** Indexes of the coordinates ordered by cell and then by index */
+	private int[] cellCoords;
+
+	/**
+	 * Creates an index of coordinates
+	 * @param coords The coordinates
+	 */
+	public SpatialIndex(List<Coord> coords) {
+		int n = coords.size();
+		this.xs = new double[n];
+		this.ys = new double[n];
+		double maxX, maxY;
+		minX = minY = Double.MAX_VALUE;
+		maxX = maxY = -Double.MAX_VALUE;
+		int i = 0;
+		for (Coord c : coords) {
+			xs[i] = c.getX();
+			ys[i] = c.getY();
+			minX = Math.min(minX, xs[i]);
+			minY = Math.min(minY, ys[i]);
+			maxX = Math.max(maxX, xs[i]);
+			maxY = Math.max(maxY, ys[i]);
+			i++;
+		}
+
+		double width = Math.max(maxX - minX, 1);
+		double height = Math.max(maxY - minY, 1);
+		double cellSide = Math.sqrt(width * height * COORDS_PER_CELL /
+				Math.max(n, 1));
+		this.cols = Math.max(1, Math.min(n, (int)(width / cellSide)));
+		this.rows = Math.max(1, Math.min(n, (int)(height / cellSide)));
+		this.cellWidth = width / cols;
+		this.cellHeight = height / rows;
+
+		/* counting sort of the coordinates by cell */
+		this.cellStart = new int[cols * rows + 1];
+		int[] cellOf = new int[n];
+		for (i=0; i<n; i++) {
+			cellOf[i] = cell(col(xs[i]), row(ys[i]));
+			cellStart[cellOf[i] + 1]++;
+		}
+		for (i=0; i<cols * rows; i++) {
+			cellStart[i + 1] += cellStart[i];
+		}
+		this.cellCoords = new int[n];
+		int[] fill = cellStart.clone();
+		for (i=0; i<n; i++) {
+			cellCoords[fill[cellOf[i]]++] = i;
+		}
+	}
+
+	/**
+	 * Returns the number of indexed coordinates
+	 * @return The number of coordinates
+	 */
+	public int size() {
+		return xs.length;
+	}
+
+	/**
+	 * Returns the index of the coordinate nearest to a location. If many
+	 * coordinates are equally near, the one with the smallest index is
+	 * returned (i.e., the same one a linear scan for a strictly smaller
+	 * distance would return).
+	 * @param location The location
+	 * @return Index of the nearest coordinate in the list the index was
+	 * created from or -1 if the index is empty
+	 */
+	public int nearest(Coord location) {
+		double x = location.getX();
+		double y = location.getY();
+		int col = col(x);
+		int row = row(y);
+		int best = -1;
+		double bestDistance = Double.POSITIVE_INFINITY;
+		double cellSide = Math.min(cellWidth, cellHeight);
+		int maxRing = Math.max(Math.max(col, cols - 1 - col),
+				Math.max(row, rows - 1 - row));
+
+		for (int ring = 0; ring <= maxRing; ring++) {
+			if (best >= 0 && (ring - 1) * cellSide > bestDistance) {
+				break; // the rest of the coordinates are further away
+			}
+			for (int r = row - ring; r <= row + ring; r++) {
+				if (r < 0 || r >= rows) {
+					continue;
+				}
+				/* only the first and last cell of the middle rows are on
+				   the ring */
+				boolean edgeRow = (r == row - ring || r == row + ring);
+				int step = edgeRow ? 1 : 2 * ring;
+				for (int c = col - ring; c <= col + ring; c += step) {
+					if (c < 0 || c >= cols) {
+						continue;
+					}
+					int cell = cell(c, r);
+					int end = cellStart[cell + 1];
+					for (int k = cellStart[cell]; k < end; k++) {
+						int i = cellCoords[k];
+						double dx = xs[i] - x;
+						double dy = ys[i] - y;
+						double distance = Math.sqrt(dx*dx + dy*dy);
+						if (distance < bestDistance ||
+								(distance == bestDistance && i < best)) {
+							bestDistance = distance;
+							best = i;
+						}
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	private int col(double x) {
+		int c = (int)((x - minX) / cellWidth);
+		return Math.max(0, Math.min(cols - 1, c));
+	}
+
+	private int row(double y) {
+		int r = (int)((y - minY) / cellHeight);
+		return Math.max(0, Math.min(rows - 1, r));
+	}
+
+	private int cell(int col, int row) {
+		return row * cols + col;
+	}
+}
@@ -0,0 +1,43 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package report;
+
+import core.DTNHost;
+import core.Message;
+import core.MessageCopyListener;
+
+/**
+ * Reports every split of message copies between two hosts as one comma
+ * separated line. Copy splits during the warm up period are ignored.
+ * For output syntax, see {@link #HEADER}.
+ */
+public class MessageCopyReport extends Report implements MessageCopyListener {
+	public static final String HEADER = "# time,ID,fromHost,toHost,fromCopies," + 
+		"toCopies,fromCcap,toCcap";
+
+	/**
+	 * Constructor.
+	 */
+	public MessageCopyReport() {
+		init();
+	}
+	
+	@Override
+	public void init() {
+		super.init();
+		write(HEADER);
+	}
+
+	public void copiesSplit(Message m, DTNHost from, DTNHost to,
+			int fromCopies, int toCopies) {
+		if (isWarmup()) {
+			return;
+		}
+		
+		write(format(getSimTime()) + "," + m.getId() + "," + from + "," + 
+				to + "," + fromCopies + "," + toCopies + "," + 
+				from.getCcap() + "," + to.getCcap());
+	}
+}
@@ -0,0 +1,113 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package report;
+
+import java.util.List;
+
+import routing.ActiveRouter;
+import routing.MessageRouter;
+import core.DTNHost;
+import core.UpdateListener;
+
+/**
+ * Reports the cost of the summary vector exchanges of active routers
+ * (see {@link ActiveRouter#SUMMARY_VECTOR_S}) compared to the message
+ * offers they replace. Offers are counted for all active routers, so the
+ * report can also be used to see how many offers are refused as old
+ * without summary vectors. Vectors and offers of the warm up period are
+ * ignored.
+ */
+public class SummaryVectorReport extends Report implements UpdateListener {
+	/** The hosts of the simulation */
+	private List<DTNHost> hosts;
+	/** Totals at the end of the warm up period (vectors, bytes, offers,
+	 * refused offers, vector skips) */
+	private long[] warmupTotals;
+
+	/**
+	 * Constructor.
+	 */
+	public SummaryVectorReport() {
+		init();
+	}
+
+	@Override
+	public void init() {
+		super.init();
+		this.hosts = null;
+		this.warmupTotals = null;
+	}
+
+	public void updated(List<DTNHost> hosts) {
+		this.hosts = hosts;
+		if (this.warmupTotals == null && !isWarmup()) {
+			this.warmupTotals = getTotals();
+		}
+	}
+
+	/**
+	 * Sums the counters of the active routers of the hosts
+	 * @return The totals
+	 */
+	private long[] getTotals() {
+		long[] totals = new long[5];
+		if (this.hosts == null) {
+			return totals;
+		}
+
+		for (DTNHost h : this.hosts) {
+			MessageRouter r = h.getRouter();
+			if (!(r instanceof ActiveRouter)) {
+				continue;
+			}
+			ActiveRouter ar = (ActiveRouter)r;
+			totals[0] += ar.getNrofSummaryVectors();
+			totals[1] += ar.getSummaryVectorBytes();
+			totals[2] += ar.getNrofOffers();
+			totals[3] += ar.getNrofRefusedOffers();
+			totals[4] += ar.getNrofVectorSkips();
+		}
+
+		return totals;
+	}
+
+	@Override
+	public void done() {
+		write("Summary vector stats for scenario " + getScenarioName() +
+				"\nsim_time: " + format(getSimTime()));
+		long[] totals = getTotals();
+		if (this.warmupTotals != null) {
+			for (int i=0; i<totals.length; i++) {
+				totals[i] -= this.warmupTotals[i];
+			}
+		}
+		double vectorAvg = Double.NaN; // average vector size
+		double refusedRatio = Double.NaN; // share of offers refused as old
+		double bytesPerSkip = Double.NaN; // vector bytes per skipped offer
+
+		if (totals[0] > 0) {
+			vectorAvg = (1.0 * totals[1]) / totals[0];
+		}
+		if (totals[2] > 0) {
+			refusedRatio = (1.0 * totals[3]) / totals[2];
+		}
+		if (totals[4] > 0) {
+			bytesPerSkip = (1.0 * totals[1]) / totals[4];
+		}
+
+		String statsText = "vectors: " + totals[0] +
+			"\nvector_bytes: " + totals[1] +
+			"\nvector_bytes_avg: " + format(vectorAvg) +
+			"\noffers: " + totals[2] +
+			"\nrefused_old: " + totals[3] +
+			"\nrefused_ratio: " + format(refusedRatio) +
+			"\nvector_skips: " + totals[4] +
+			"\nbytes_per_skip: " + format(bytesPerSkip)
+			;
+
+		write(statsText);
+		super.done();
+	}
+}
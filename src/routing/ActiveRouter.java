@@ -5,8 +5,8 @@
 package routing;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
 
@@ -31,6 +31,18 @@ public abstract class ActiveRouter extends MessageRouter {
 	/** should messages that final recipient marks as delivered be deleted
 	 * from message buffer */
 	protected boolean deleteDelivered;
+	/** Summary vector exchange -setting id ({@value}). Boolean valued.
+	 * If set to true, nodes exchange summary vectors of the messages they
+	 * have seen when a connection comes up and, during the contact, don't
+	 * offer the messages the other node had (see 
+	 * {@link #canSkipSeen(Message)}). A vector is a snapshot of the other
+	 * node's messages when the contact starts; it isn't updated if the node
+	 * gets or drops messages during the contact. The vectors are sent over
+	 * the connection before any messages. Both nodes must use the setting.
+	 * Default=false. */
+	public static final String SUMMARY_VECTOR_S = "summaryVector";
+	/** should summary vectors be exchanged in the beginning of contacts */
+	protected boolean summaryVector;
 	
 	/** prefix of all response message IDs */
 	public static final String RESPONSE_PREFIX = "R_";
@@ -38,8 +50,20 @@ public abstract class ActiveRouter extends MessageRouter {
 	public static int TTL_CHECK_INTERVAL = 60;
 	/** connection(s) that are currently used for sending */
 	protected ArrayList<Connection> sendingConnections;
+	/** cached sending queue of all the messages */
+	private SendQueue sendQueue;
 	/** sim time when the last TTL check was done */
 	private double lastTtlCheck;
+	/** summary vectors received from the other nodes of the connections */
+	private HashMap<Connection, SummaryVector> peerVectors;
+	/** number of summary vectors received and their total size */
+	private int nrofVectors;
+	private long vectorBytes;
+	/** number of messages offered to other nodes, offers refused as old
+	 * and offers skipped because of summary vectors */
+	private int nrofOffers;
+	private int nrofRefused;
+	private int nrofVectorSkips;
 	
 
 	/**
@@ -56,6 +80,10 @@ public abstract class ActiveRouter extends MessageRouter {
 		else {
 			this.deleteDelivered = false;
 		}
+		
+		if (s.contains(SUMMARY_VECTOR_S)) {
+			this.summaryVector = s.getBoolean(SUMMARY_VECTOR_S);
+		}
 	}
 	
 	/**
@@ -65,21 +93,69 @@ public abstract class ActiveRouter extends MessageRouter {
 	protected ActiveRouter(ActiveRouter r) {
 		super(r);
 		this.deleteDelivered = r.deleteDelivered;
+		this.summaryVector = r.summaryVector;
 	}
 	
 	@Override
 	public void init(DTNHost host, List<MessageListener> mListeners) {
 		super.init(host, mListeners);
 		this.sendingConnections = new ArrayList<Connection>(1);
+		this.sendQueue = new SendQueue(this, false);
 		this.lastTtlCheck = 0;
+		if (this.summaryVector) {
+			this.peerVectors = new HashMap<Connection, SummaryVector>();
+		}
 	}
 	
 	/**
-	 * Called when a connection's state changes. This version doesn't do 
-	 * anything but subclasses may want to override this.
+	 * Called when a connection's state changes. This version forgets the
+	 * messages refused over the connections to the same node and exchanges
+	 * the summary vectors (if enabled), but subclasses may want to override
+	 * this.
 	 */
 	@Override
-	public void changedConnection(Connection con) { }
+	public void changedConnection(Connection con) {
+		DTNHost other = con.getOtherNode(getHost());
+		con.clearRefusals();
+		for (Connection c : getConnections()) {
+			if (c.getOtherNode(getHost()) == other) {
+				c.clearRefusals();
+			}
+		}
+		
+		if (this.summaryVector) {
+			exchangeSummaryVector(con);
+		}
+	}
+	
+	/**
+	 * Takes the summary vector of the other node of a connection that came
+	 * up, or forgets it if the connection went down. The vector is sent over
+	 * the connection as control data. The other node gets this node's vector
+	 * when its router is informed about the connection. The vector is a
+	 * snapshot that is used for the whole contact; it is not refreshed when
+	 * the other node's buffer changes. Nothing is done if the other node 
+	 * doesn't exchange summary vectors.
+	 * @param con The connection whose state changed
+	 */
+	private void exchangeSummaryVector(Connection con) {
+		if (!con.isUp()) {
+			this.peerVectors.remove(con);
+			return;
+		}
+		
+		MessageRouter peer = con.getOtherNode(getHost()).getRouter();
+		if (!(peer instanceof ActiveRouter) || 
+				!((ActiveRouter)peer).summaryVector) {
+			return;
+		}
+		
+		SummaryVector vector = peer.getSummaryVector();
+		con.addControlBytes(vector.getByteSize());
+		this.peerVectors.put(con, vector);
+		this.nrofVectors++;
+		this.vectorBytes += vector.getByteSize();
+	}
 	
 	@Override
 	public boolean requestDeliverableMessages(Connection con) {
@@ -165,12 +241,18 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 		
 		retVal = con.startTransfer(getHost(), m);
+		this.nrofOffers++;
 		if (retVal == RCV_OK) { // started transfer
 			addToSendingConnections(con);
 		}
-		else if (deleteDelivered && retVal == DENIED_OLD && 
+		else if (retVal == DENIED_OLD) {
+			con.setRefused(getHost(), m); // see tryAllMessages
+			this.nrofRefused++;
+		}
+		
+		if (deleteDelivered && retVal == DENIED_OLD && 
 				m.getTo().contains(con.getOtherNode(this.getHost()))) {
-			m.getTo().remove(con.getOtherNode(this.getHost()));
+			m.removeRecipient(con.getOtherNode(this.getHost()));
 			/* final recipient has already received the msg -> delete it */
 			if(m.getTo().isEmpty())
 				this.deleteMessage(m.getId(), false);
@@ -232,8 +314,8 @@ public abstract class ActiveRouter extends MessageRouter {
 	}
 	
 	/** 
-	 * Removes messages from the buffer (oldest first) until
-	 * there's enough space for the new message.
+	 * Removes messages from the buffer (oldest first, or in the order of
+	 * the drop policy) until there's enough space for the new message.
 	 * @param size Size of the new message 
 	 * transferred, the transfer is aborted before message is removed
 	 * @return True if enough space could be freed, false if not
@@ -246,7 +328,7 @@ public abstract class ActiveRouter extends MessageRouter {
 		int freeBuffer = this.getFreeBufferSize();
 		/* delete messages from the buffer until there's enough space */
 		while (freeBuffer < size) {
-			Message m = getOldestMessage(true); // don't remove msgs being sent
+			Message m = getMessageToDrop(true); // don't remove msgs being sent
 
 			if (m == null) {
 				return false; // couldn't remove any more messages
@@ -261,15 +343,12 @@ public abstract class ActiveRouter extends MessageRouter {
 	}
 	
 	/**
-	 * Drops messages whose TTL is less than zero.
+	 * Drops messages whose TTL is less than zero. The messages are dropped
+	 * in the order of their expiry.
 	 */
 	protected void dropExpiredMessages() {
-		Message[] messages = getMessageCollection().toArray(new Message[0]);
-		for (int i=0; i<messages.length; i++) {
-			int ttl = messages[i].getTtl(); 
-			if (ttl <= 0) {
-				deleteMessage(messages[i].getId(), true);
-			}
+		for (Message m : getMessageBuffer().getExpired()) {
+			deleteMessage(m.getId(), true);
 		}
 	}
 	
@@ -287,7 +366,8 @@ public abstract class ActiveRouter extends MessageRouter {
 	
 	/**
 	 * Returns the oldest (by receive time) message in the message buffer 
-	 * (that is not being sent if excludeMsgBeingSent is true).
+	 * (that is not being sent if excludeMsgBeingSent is true). Of messages
+	 * received at the same time, the one that was buffered first is returned.
 	 * @param excludeMsgBeingSent If true, excludes message(s) that are
 	 * being sent from the oldest message check (i.e. if oldest message is
 	 * being sent, the second oldest message is returned)
@@ -296,23 +376,45 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * exludeMsgBeingSent is true)
 	 */
 	protected Message getOldestMessage(boolean excludeMsgBeingSent) {
-		Collection<Message> messages = this.getMessageCollection();
-		Message oldest = null;
-		for (Message m : messages) {
-			
-			if (excludeMsgBeingSent && isSending(m.getId())) {
-				continue; // skip the message(s) that router is sending
-			}
-			
-			if (oldest == null ) {
-				oldest = m;
-			}
-			else if (oldest.getReceiveTime() > m.getReceiveTime()) {
-				oldest = m;
-			}
+		if (excludeMsgBeingSent) {
+			updateSendingMarks();
+		}
+		return getMessageBuffer().getOldest(excludeMsgBeingSent);
+	}
+	
+	/**
+	 * Returns the message that should be dropped next from the buffer.
+	 * If a drop policy is defined, this is the first message in the order
+	 * of the policy, otherwise the oldest message 
+	 * (see {@link #getOldestMessage(boolean)}).
+	 * @param excludeMsgBeingSent If true, excludes message(s) that are
+	 * being sent
+	 * @return The message to drop or null if no message could be returned
+	 * (no messages in buffer or all messages in buffer are being sent and
+	 * exludeMsgBeingSent is true)
+	 */
+	protected Message getMessageToDrop(boolean excludeMsgBeingSent) {
+		if (getDropPolicy() == null) {
+			return getOldestMessage(excludeMsgBeingSent);
 		}
 		
-		return oldest;
+		if (excludeMsgBeingSent) {
+			updateSendingMarks();
+		}
+		return getMessageBuffer().getFirst(excludeMsgBeingSent);
+	}
+	
+	/**
+	 * Removes the being sent marks of the messages whose transfers have been
+	 * finalized or aborted since the marking.
+	 */
+	private void updateSendingMarks() {
+		MessageBuffer buffer = getMessageBuffer();
+		for (String id : buffer.getSendingMarks()) {
+			if (!isSending(id)) {
+				buffer.unmarkSending(id);
+			}
+		}
 	}
 	
 	/**
@@ -368,14 +470,32 @@ public abstract class ActiveRouter extends MessageRouter {
 	 /**
 	  * Goes trough the messages until the other node accepts one
 	  * for receiving (or doesn't accept any). If a transfer is started, the
-	  * connection is included in the list of sending connections.
+	  * connection is included in the list of sending connections. Messages
+	  * that the other node has already refused as old during this contact
+	  * are not offered again as long as nothing has changed that could
+	  * make them acceptable (see {@link #canSkipRefused(Connection)}), and
+	  * if summary vectors are exchanged, messages that the other node had
+	  * in the beginning of the contact are not offered at all (unless
+	  * {@link #canSkipSeen(Message)} says otherwise).
 	  * @param con Connection trough which the messages are sent
 	  * @param messages A list of messages to try
 	  * @return The message whose transfer was started or null if no 
 	  * transfer was started. 
 	  */
 	protected Message tryAllMessages(Connection con, List<Message> messages) {
+		boolean skipRefused = canSkipRefused(con);
+		SummaryVector vector = 
+			(this.peerVectors != null ? this.peerVectors.get(con) : null);
+		
 		for (Message m : messages) {
+			if (vector != null && vector.contains(m.getIdKey()) && 
+					canSkipSeen(m)) {
+				this.nrofVectorSkips++;
+				continue; // the other node has seen the message
+			}
+			if (skipRefused && con.isRefused(getHost(), m)) {
+				continue; // would be refused again
+			}
 			int retVal = startTransfer(m, con); 
 			if (retVal == RCV_OK) {
 				return m;	// accepted a message, don't try others
@@ -383,10 +503,44 @@ public abstract class ActiveRouter extends MessageRouter {
 			else if (retVal > 0) { 
 				return null; // should try later -> don't bother trying others
 			}
+			/* refusing may have changed the other node (e.g. dropped msgs) */
+			skipRefused = canSkipRefused(con);
 		}
 		
 		return null; // no message was accepted		
 	}
+	
+	/**
+	 * Checks if a message that the other node of a connection had in the
+	 * beginning of the contact (according to its summary vector) can be 
+	 * skipped instead of offering it. This implementation always returns
+	 * true, but subclasses whose routers act on offers of messages the 
+	 * receiver already has should return false.
+	 * @param m The message
+	 * @return true if the message can be skipped
+	 */
+	protected boolean canSkipSeen(Message m) {
+		return true;
+	}
+
+	/**
+	 * Checks if the messages the other node of a connection has refused
+	 * as old can be skipped instead of offering them again. Refusals are
+	 * forgotten when the other node's buffer or the changeable state of
+	 * this node's messages (e.g. their copies) changes. Refused messages can
+	 * not be skipped while the other node is transferring since then it
+	 * would answer "try later", which ends the offering.
+	 * @param con The connection whose refusals are checked
+	 * @return true if the refused messages can be skipped
+	 */
+	protected boolean canSkipRefused(Connection con) {
+		MessageRouter peer = con.getOtherNode(getHost()).getRouter();
+		con.validateRefusals(getHost(), peer.getRefusalVersion() + 
+				getMessageBuffer().getChangeCount());
+		
+		return peer instanceof ActiveRouter && 
+			!((ActiveRouter)peer).isTransferring();
+	}
 
 	/**
 	 * Tries to send all given messages to all given connections. Connections
@@ -415,7 +569,8 @@ public abstract class ActiveRouter extends MessageRouter {
 	/**
 	 * Tries to send all messages that this router is carrying to all
 	 * connections this node has. Messages are ordered using the 
-	 * {@link MessageRouter#sortByQueueMode(List)}. See 
+	 * {@link MessageRouter#sortByQueueMode(List)} order, which is cached
+	 * until the buffer changes (see {@link SendQueue}). See 
 	 * {@link #tryMessagesToConnections(List, List)} for sending details.
 	 * @return The connections that started a transfer or null if no connection
 	 * accepted a message.
@@ -426,11 +581,7 @@ public abstract class ActiveRouter extends MessageRouter {
 			return null;
 		}
 
-		List<Message> messages = 
-			new ArrayList<Message>(this.getMessageCollection());
-		this.sortByQueueMode(messages);
-
-		return tryMessagesToConnections(messages, connections);
+		return tryMessagesToConnections(sendQueue.getQueue(), connections);
 	}
 		
 	/**
@@ -489,6 +640,9 @@ public abstract class ActiveRouter extends MessageRouter {
 	 */
 	protected void addToSendingConnections(Connection con) {
 		this.sendingConnections.add(con);
+		if (con.getMessage() != null) {
+			getMessageBuffer().markSending(con.getMessage().getId());
+		}
 	}
 		
 	/**
@@ -516,6 +670,49 @@ public abstract class ActiveRouter extends MessageRouter {
 		return false;		
 	}
 	
+	/**
+	 * Returns the number of summary vectors this router has received
+	 * @return The number of received summary vectors
+	 */
+	public int getNrofSummaryVectors() {
+		return this.nrofVectors;
+	}
+	
+	/**
+	 * Returns the total size of the summary vectors this router has received
+	 * @return The size of the received summary vectors (bytes)
+	 */
+	public long getSummaryVectorBytes() {
+		return this.vectorBytes;
+	}
+	
+	/**
+	 * Returns the number of times this router has offered a message to
+	 * another node
+	 * @return The number of offers
+	 */
+	public int getNrofOffers() {
+		return this.nrofOffers;
+	}
+	
+	/**
+	 * Returns the number of offers that the other node refused because it
+	 * had already seen the message
+	 * @return The number of offers refused as old
+	 */
+	public int getNrofRefusedOffers() {
+		return this.nrofRefused;
+	}
+	
+	/**
+	 * Returns the number of messages that were not offered because the 
+	 * other node's summary vector contained them
+	 * @return The number of offers skipped because of summary vectors
+	 */
+	public int getNrofVectorSkips() {
+		return this.nrofVectorSkips;
+	}
+	
 	/**
 	 * Returns true if this router is currently sending a message with 
 	 * <CODE>msgId</CODE>.
@@ -581,6 +778,10 @@ public abstract class ActiveRouter extends MessageRouter {
 			}
 		}
 		
+		if (this.sendingConnections.size() == 0) {
+			getMessageBuffer().clearSending();
+		}
+		
 		/* time to do a TTL check and drop old messages? Only if not sending */
 		if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL && 
 				sendingConnections.size() == 0) {
@@ -589,6 +790,18 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 	}
 	
+	/**
+	 * Returns true if the router isn't sending anything and it isn't time
+	 * for the TTL check. Subclasses' updates must not do anything else
+	 * without connections, or they must override this too.
+	 * @return true if the router is idle
+	 */
+	@Override
+	public boolean isIdle() {
+		return super.isIdle() && this.sendingConnections.size() == 0 &&
+			SimClock.getTime() - lastTtlCheck < TTL_CHECK_INTERVAL;
+	}
+	
 	/**
 	 * Method is called just before a transfer is aborted at {@link #update()} 
 	 * due connection going down. This happens on the sending host. 
@@ -169,6 +169,15 @@ public class EnergyAwareRouter extends ActiveRouter
 		}
 	}
 	
+	/**
+	 * Returns false since the energy is reduced at every update
+	 * @return false
+	 */
+	@Override
+	public boolean isIdle() {
+		return false;
+	}
+	
 	@Override
 	public void update() {
 		super.update();
@@ -21,6 +21,8 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	
 	/** List of all routers in this node group */
 	private static List<EpidemicOracleRouter> allRouters;
+	/** Number of times the refusal version has been asked */
+	private long refusalVersion;
 
 	static {
 		DTNSim.registerForReset(EpidemicOracleRouter.class.getCanonicalName());
@@ -45,6 +47,16 @@ public class EpidemicOracleRouter extends ActiveRouter {
 		allRouters.add(this);
 	}
 	
+	/**
+	 * Returns a new version every time. Messages that are being received
+	 * are refused only temporarily, so the refusals of this router must
+	 * not be remembered.
+	 */
+	@Override
+	protected long getRefusalVersion() {
+		return ++this.refusalVersion;
+	}
+	
 	@Override
 	public void changedConnection(Connection con) {
 		if (con.isUp()) {
@@ -95,9 +107,10 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	 */
 	public void removeDeliveredMessage(String id) {
 		if (this.hasMessage(id)) {
+			int key = Message.getIdKey(id);
 			for (Connection c : this.sendingConnections) {
 				/* if sending the message-to-be-removed, cancel transfer */
-				if (c.getMessage().getId().equals(id)) {
+				if (c.getMessage().getIdKey() == key) {
 					c.abortTransfer();
 				}
 			}
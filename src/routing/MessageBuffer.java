@@ -0,0 +1,437 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import routing.policy.BufferPolicy;
+import core.Message;
+import core.SimError;
+
+/**
+ * Message buffer of a router. Besides the ID lookup map, the buffer keeps
+ * the messages ordered by their receive time and by their expiry time,
+ * and a running total of the buffered bytes, so that finding the oldest
+ * message, the expired messages or the free space doesn't require going
+ * through the whole buffer. If the buffer is given a buffer policy,
+ * the messages are also kept in the order of that policy. Iteration order
+ * of {@link #getMessages()} is the same as the one of a plain ID-keyed
+ * HashMap.
+ */
+public class MessageBuffer {
+	/** Orders entries by (indexed) receive time; ties by insertion order */
+	private static final Comparator<Entry> RECEIVE_TIME_ORDER =
+		new Comparator<Entry>() {
+		public int compare(Entry e1, Entry e2) {
+			int c = Double.compare(e1.receiveTime, e2.receiveTime);
+			return c != 0 ? c : compareSeq(e1, e2);
+		}
+	};
+	/** Orders entries by policy key; ties by insertion order */
+	private static final Comparator<Entry> POLICY_ORDER =
+		new Comparator<Entry>() {
+		public int compare(Entry e1, Entry e2) {
+			int c = Double.compare(e1.policyKey, e2.policyKey);
+			return c != 0 ? c : compareSeq(e1, e2);
+		}
+	};
+	/** Orders entries by expiry time; ties by insertion order */
+	private static final Comparator<Entry> EXPIRY_ORDER =
+		new Comparator<Entry>() {
+		public int compare(Entry e1, Entry e2) {
+			int c = Double.compare(e1.expiryTime, e2.expiryTime);
+			return c != 0 ? c : compareSeq(e1, e2);
+		}
+	};
+
+	/** The buffered messages' entries with message IDs as keys */
+	private HashMap<String, Entry> entries;
+	/** Entries ordered by receive time */
+	private TreeSet<Entry> byReceiveTime;
+	/** Entries of the messages with a finite TTL ordered by expiry time */
+	private TreeSet<Entry> byExpiryTime;
+	/** The buffer policy whose order is kept (or null) */
+	private BufferPolicy policy;
+	/** Entries ordered by the policy key (or null if there's no policy) */
+	private TreeSet<Entry> byPolicy;
+	/** IDs of the messages marked as being sent */
+	private Set<String> beingSent;
+	/** Total size of the buffered messages (bytes) */
+	private long occupancy;
+	/** Insertion sequence number of the next entry */
+	private long nextSeq;
+	/** Number of times messages have been added or removed */
+	private long version;
+	/** Number of times messages have been removed or re-indexed */
+	private long changes;
+	/** Message view of the entries */
+	private Collection<Message> messageView;
+
+	/**
+	 * Creates a new, empty, message buffer without a buffer policy.
+	 */
+	public MessageBuffer() {
+		this(null);
+	}
+
+	/**
+	 * Creates a new, empty, message buffer.
+	 * @param policy The buffer policy whose order is kept or null for none
+	 */
+	public MessageBuffer(BufferPolicy policy) {
+		this.policy = policy;
+		if (policy != null) {
+			this.byPolicy = new TreeSet<Entry>(POLICY_ORDER);
+		}
+		this.entries = new HashMap<String, Entry>();
+		this.byReceiveTime = new TreeSet<Entry>(RECEIVE_TIME_ORDER);
+		this.byExpiryTime = new TreeSet<Entry>(EXPIRY_ORDER);
+		this.beingSent = new HashSet<String>();
+		this.occupancy = 0;
+		this.nextSeq = 0;
+		this.messageView = new MessageView();
+	}
+
+	/**
+	 * Adds a message to the buffer. A message with the same ID is replaced.
+	 * @param m The message to add
+	 * @return The replaced message or null if there was no message with the
+	 * same ID in the buffer
+	 */
+	public Message add(Message m) {
+		Entry e = new Entry(m, nextSeq++);
+		version++;
+		Entry old = entries.put(m.getId(), e);
+		if (old != null) {
+			unindex(old);
+		}
+
+		byReceiveTime.add(e);
+		if (e.expiryTime != Double.MAX_VALUE) {
+			byExpiryTime.add(e);
+		}
+		if (policy != null) {
+			e.policyKey = policy.getKey(m);
+			byPolicy.add(e);
+		}
+		occupancy += m.getSize();
+
+		return old != null ? old.msg : null;
+	}
+
+	/**
+	 * Removes a message from the buffer.
+	 * @param id ID of the message to remove
+	 * @return The removed message or null if there was no message with the
+	 * given ID
+	 */
+	public Message remove(String id) {
+		Entry e = entries.remove(id);
+		if (e == null) {
+			return null;
+		}
+		version++;
+		changes++;
+		unindex(e);
+		return e.msg;
+	}
+
+	/**
+	 * Removes an entry from the ordered indexes and the occupancy
+	 * @param e The entry to remove
+	 */
+	private void unindex(Entry e) {
+		byReceiveTime.remove(e);
+		if (e.expiryTime != Double.MAX_VALUE) {
+			byExpiryTime.remove(e);
+		}
+		if (policy != null) {
+			byPolicy.remove(e);
+		}
+		occupancy -= e.msg.getSize();
+	}
+
+	/**
+	 * Updates the position of a message in the buffer policy's order. The
+	 * policy key of a message is read when the message is added to the
+	 * buffer, so this must be called when a buffered message is changed
+	 * in a way that affects its key or its position in the router's
+	 * sending queue. Nothing is done for messages that are not in the
+	 * buffer.
+	 * @param id ID of the changed message
+	 */
+	public void reindex(String id) {
+		Entry e = entries.get(id);
+		if (e == null) {
+			return;
+		}
+		version++;
+		changes++;
+		if (policy == null) {
+			return;
+		}
+		byPolicy.remove(e);
+		e.policyKey = policy.getKey(e.msg);
+		byPolicy.add(e);
+	}
+
+	/**
+	 * Returns the message with the given ID
+	 * @param id ID of the message
+	 * @return The message or null if there's no message with that ID
+	 */
+	public Message get(String id) {
+		Entry e = entries.get(id);
+		return e != null ? e.msg : null;
+	}
+
+	/**
+	 * Returns true if the buffer contains a message with the given ID
+	 * @param id ID of the message
+	 * @return true if the message is in the buffer
+	 */
+	public boolean contains(String id) {
+		return entries.containsKey(id);
+	}
+
+	/**
+	 * Returns the number of messages in the buffer
+	 * @return The number of messages
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the version of the buffer's contents. The version changes
+	 * every time a message is added to or removed from the buffer or a
+	 * buffered message is re-indexed (see {@link #reindex(String)}).
+	 * @return The version
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the number of times a message has been removed from the
+	 * buffer or a buffered message has been changed (see
+	 * {@link #reindex(String)}). Unlike {@link #getVersion()}, this doesn't
+	 * change when messages are only added.
+	 * @return The change count
+	 */
+	public long getChangeCount() {
+		return changes;
+	}
+
+	/**
+	 * Returns the total size of the buffered messages
+	 * @return The occupancy in bytes
+	 */
+	public long getOccupancy() {
+		return occupancy;
+	}
+
+	/**
+	 * Returns a live, unmodifiable, view of the buffered messages
+	 * @return The messages
+	 */
+	public Collection<Message> getMessages() {
+		return messageView;
+	}
+
+	/**
+	 * Returns the message with the smallest receive time. Of messages
+	 * received at the same time, the one that was buffered first is
+	 * returned.
+	 * <p>The same message instance can be in the buffers of several routers
+	 * and its receive time is updated whenever some router receives it.
+	 * Since receive times can only grow, entries whose receive time has
+	 * changed are moved to their new place lazily here.</p>
+	 * @param excludeSending If true, messages marked as being sent are skipped
+	 * @return The oldest message or null if there is no (such) message
+	 */
+	public Message getOldest(boolean excludeSending) {
+		Entry skipped = null;
+		Entry e = first(skipped);
+
+		while (e != null) {
+			double time = e.msg.getReceiveTime();
+			if (time != e.receiveTime) {
+				byReceiveTime.remove(e);
+				e.receiveTime = time;
+				byReceiveTime.add(e);
+			}
+			else if (excludeSending && isMarkedSending(e.msg.getId())) {
+				skipped = e;
+			}
+			else {
+				return e.msg;
+			}
+			e = first(skipped);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the first message in the order of the buffer policy. Of
+	 * messages with equal keys, the one that was buffered first is returned.
+	 * @param excludeSending If true, messages marked as being sent are skipped
+	 * @return The first message or null if there is no (such) message
+	 * @throws SimError if the buffer doesn't have a policy
+	 */
+	public Message getFirst(boolean excludeSending) {
+		if (policy == null) {
+			throw new SimError("No buffer policy for the message buffer");
+		}
+
+		for (Entry e : byPolicy) {
+			if (!excludeSending || !isMarkedSending(e.msg.getId())) {
+				return e.msg;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the buffer policy whose order is kept
+	 * @return The policy or null if the buffer doesn't have a policy
+	 */
+	public BufferPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Returns the first entry in receive time order after the given entry
+	 * @param after The entry to start after or null to start from the first
+	 * @return The entry or null if there are no more entries
+	 */
+	private Entry first(Entry after) {
+		if (after == null) {
+			return byReceiveTime.isEmpty() ? null : byReceiveTime.first();
+		}
+		return byReceiveTime.higher(after);
+	}
+
+	/**
+	 * Returns the messages whose TTL has run out (i.e., is zero or
+	 * negative), in the order of their expiry times (messages expiring at
+	 * the same time in the order they were buffered). Messages are not
+	 * removed.
+	 * @return A list of the expired messages
+	 */
+	public List<Message> getExpired() {
+		List<Message> list = new ArrayList<Message>();
+		for (Entry e : byExpiryTime) {
+			if (e.msg.getTtl() > 0) {
+				break; // rest of the messages expire later
+			}
+			list.add(e.msg);
+		}
+		return list;
+	}
+
+	/**
+	 * Marks a message as being sent
+	 * @param id ID of the message
+	 */
+	public void markSending(String id) {
+		beingSent.add(id);
+	}
+
+	/**
+	 * Removes the being sent mark of a message
+	 * @param id ID of the message
+	 */
+	public void unmarkSending(String id) {
+		beingSent.remove(id);
+	}
+
+	/**
+	 * Removes all being sent marks
+	 */
+	public void clearSending() {
+		beingSent.clear();
+	}
+
+	/**
+	 * Returns the IDs of the messages marked as being sent
+	 * @return A copy of the marked IDs
+	 */
+	public String[] getSendingMarks() {
+		return beingSent.toArray(new String[beingSent.size()]);
+	}
+
+	/**
+	 * Returns true if a message with the given ID is marked as being sent
+	 * @param id ID of the message
+	 * @return true if the message is marked as being sent
+	 */
+	public boolean isMarkedSending(String id) {
+		return !beingSent.isEmpty() && beingSent.contains(id);
+	}
+
+	/**
+	 * Compares the insertion order of two entries
+	 */
+	private static int compareSeq(Entry e1, Entry e2) {
+		return e1.seq < e2.seq ? -1 : (e1.seq > e2.seq ? 1 : 0);
+	}
+
+	/**
+	 * Buffer entry of a message. The index keys are stored in the entry
+	 * so later changes in the message can't break the ordering.
+	 */
+	private static class Entry {
+		private Message msg;
+		private long seq;
+		private double receiveTime;
+		private double expiryTime;
+		private double policyKey;
+
+		private Entry(Message msg, long seq) {
+			this.msg = msg;
+			this.seq = seq;
+			this.receiveTime = msg.getReceiveTime();
+			this.expiryTime = msg.getExpiryTime();
+		}
+	}
+
+	/**
+	 * Collection view of the messages in the entry map's iteration order
+	 */
+	private class MessageView extends AbstractCollection<Message> {
+		@Override
+		public Iterator<Message> iterator() {
+			final Iterator<Entry> i = entries.values().iterator();
+			return new Iterator<Message>() {
+				public boolean hasNext() {
+					return i.hasNext();
+				}
+				public Message next() {
+					return i.next().msg;
+				}
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return entries.size();
+		}
+	}
+}
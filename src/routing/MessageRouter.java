@@ -12,9 +12,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 
+import routing.policy.BufferPolicy;
 import core.Application;
 import core.Connection;
 import core.DTNHost;
+import core.IntMap;
+import core.IntSet;
 import core.Message;
 import core.MessageListener;
 import core.Settings;
@@ -43,14 +46,37 @@ public abstract class MessageRouter {
 	 * <UL>
 	 * <LI/> 1 : random (message order is randomized every time; default option)
 	 * <LI/> 2 : FIFO (most recently received messages are sent last)
+	 * <LI/> name of a {@link BufferPolicy} class in the 
+	 * {@value #POLICY_PACKAGE} package : the order of that buffer policy
 	 * </UL>
 	 */ 
 	public static final String SEND_QUEUE_MODE_S = "sendQueue";
+	/**
+	 * Message drop policy -setting id ({@value}). Name of the 
+	 * {@link BufferPolicy} class (in the {@value #POLICY_PACKAGE} package)
+	 * whose order is used for choosing the messages to drop when the buffer
+	 * is full. By default, the oldest (by receive time) message is dropped
+	 * first.
+	 */
+	public static final String DROP_POLICY_S = "dropPolicy";
+	/**
+	 * Keep delivered messages -setting id ({@value}). Boolean value. If 
+	 * true, the router keeps the messages it has received as the final 
+	 * recipient so that they can be shown in the routing info. By default 
+	 * only the IDs of the delivered messages are kept. Message listeners
+	 * get the delivered messages regardless of this setting (see 
+	 * {@link MessageListener#messageTransferred}).
+	 */
+	public static final String KEEP_DELIVERED_S = "keepDeliveredMessages";
+	/** Package where the buffer policy classes are looked up from */
+	public static final String POLICY_PACKAGE = "routing.policy.";
 	
 	/** Setting value for random queue mode */
 	public static final int Q_MODE_RANDOM = 1;
 	/** Setting value for FIFO queue mode */
 	public static final int Q_MODE_FIFO = 2;
+	/** Queue mode for sending in the order of a buffer policy */
+	public static final int Q_MODE_POLICY = 3;
 	
 	/** Receive return value for OK */
 	public static final int RCV_OK = 0;
@@ -66,12 +92,22 @@ public abstract class MessageRouter {
 	public static final int DENIED_UNSPECIFIED = -999;
 	
 	private List<MessageListener> mListeners;
-	/** The messages being transferred with msgID_hostName keys */
-	private HashMap<String, Message> incomingMessages;
+	/** The messages being transferred with interned message IDs as keys
+	 * (see {@link Message#getIdKey()}); messages with the same ID from 
+	 * different hosts are chained */
+	private IntMap<IncomingMessage> incomingMessages;
+	/** Number of messages being transferred */
+	private int nrofIncoming;
 	/** The messages this router is carrying */
-	private HashMap<String, Message> messages; 
-	/** The messages this router has received as the final recipient */
-	private HashMap<String, Message> deliveredMessages;
+	private MessageBuffer messages;
+	/** Interned IDs of the messages this router has received as the final
+	 * recipient */
+	private IntSet deliveredIds;
+	/** The delivered messages with interned IDs as keys or null if they 
+	 * are not kept (see {@link #KEEP_DELIVERED_S}) */
+	private IntMap<Message> deliveredMessages;
+	/** Are the delivered messages kept */
+	private boolean keepDelivered;
 	/** Host where this router belongs to */
 	private DTNHost host;
 	/** size of the buffer */
@@ -80,6 +116,10 @@ public abstract class MessageRouter {
 	protected int msgTtl;
 	/** Queue mode for sending messages */
 	private int sendQueueMode;
+	/** Buffer policy of the sending queue (if queue mode is policy) */
+	private BufferPolicy sendQueuePolicy;
+	/** Buffer policy for choosing the messages to drop (or null) */
+	private BufferPolicy dropPolicy;
 
 	/** applications attached to the host */
 	private HashMap<String, Collection<Application>>	applications = null;
@@ -102,18 +142,48 @@ public abstract class MessageRouter {
 			this.msgTtl = s.getInt(MSG_TTL_S);
 		}
 		if (s.contains(SEND_QUEUE_MODE_S)) {
-			this.sendQueueMode = s.getInt(SEND_QUEUE_MODE_S);
-			if (sendQueueMode < 1 || sendQueueMode > 2) {
-				throw new SettingsError("Invalid value for " + 
-						s.getFullPropertyName(SEND_QUEUE_MODE_S));
+			String mode = s.getSetting(SEND_QUEUE_MODE_S).trim();
+			if (mode.matches("-?[0-9]+")) {
+				this.sendQueueMode = s.getInt(SEND_QUEUE_MODE_S);
+				if (sendQueueMode < 1 || sendQueueMode > 2) {
+					throw new SettingsError("Invalid value for " + 
+							s.getFullPropertyName(SEND_QUEUE_MODE_S));
+				}
+			}
+			else {
+				this.sendQueueMode = Q_MODE_POLICY;
+				this.sendQueuePolicy = createPolicy(s, SEND_QUEUE_MODE_S);
 			}
 		}
 		else {
 			sendQueueMode = Q_MODE_RANDOM;
 		}
+		if (s.contains(DROP_POLICY_S)) {
+			this.dropPolicy = createPolicy(s, DROP_POLICY_S);
+		}
+		if (s.contains(KEEP_DELIVERED_S)) {
+			this.keepDelivered = s.getBoolean(KEEP_DELIVERED_S);
+		}
 		
 	}
 	
+	/**
+	 * Creates the buffer policy named by a setting
+	 * @param s The settings object
+	 * @param setting Name of the setting whose value is the policy's name
+	 * @return The buffer policy
+	 * @throws SettingsError if the value isn't a buffer policy class name
+	 */
+	private static BufferPolicy createPolicy(Settings s, String setting) {
+		Object policy = s.createObject(POLICY_PACKAGE + 
+				s.getSetting(setting).trim());
+		if (!(policy instanceof BufferPolicy)) {
+			throw new SettingsError("Invalid buffer policy for " + 
+					s.getFullPropertyName(setting));
+		}
+		return (BufferPolicy)policy;
+	}
+	
 	/**
 	 * Initializes the router; i.e. sets the host this router is in and
 	 * message listeners that need to be informed about message related
@@ -122,9 +192,13 @@ public abstract class MessageRouter {
 	 * @param mListeners The message listeners
 	 */
 	public void init(DTNHost host, List<MessageListener> mListeners) {
-		this.incomingMessages = new HashMap<String, Message>();
-		this.messages = new HashMap<String, Message>();
-		this.deliveredMessages = new HashMap<String, Message>();
+		this.incomingMessages = new IntMap<IncomingMessage>();
+		this.nrofIncoming = 0;
+		this.messages = new MessageBuffer(this.dropPolicy);
+		this.deliveredIds = new IntSet();
+		if (this.keepDelivered) {
+			this.deliveredMessages = new IntMap<Message>();
+		}
 		this.mListeners = mListeners;
 		this.host = host;
 	}
@@ -137,6 +211,9 @@ public abstract class MessageRouter {
 		this.bufferSize = r.bufferSize;
 		this.msgTtl = r.msgTtl;
 		this.sendQueueMode = r.sendQueueMode;
+		this.sendQueuePolicy = r.sendQueuePolicy;
+		this.dropPolicy = r.dropPolicy;
+		this.keepDelivered = r.keepDelivered;
 
 		this.applications = new HashMap<String, Collection<Application>>();
 		for (Collection<Application> apps : r.applications.values()) {
@@ -159,6 +236,18 @@ public abstract class MessageRouter {
 		}
 	}
 	
+	/**
+	 * Returns true if calling {@link #update()} now wouldn't do anything
+	 * when the host doesn't have connections. This implementation returns
+	 * true if there are no applications (they are updated every time).
+	 * Subclasses whose update does something else regardless of the
+	 * connections must override this.
+	 * @return true if the router is idle
+	 */
+	public boolean isIdle() {
+		return this.applications.isEmpty();
+	}
+	
 	/**
 	 * Informs the router about change in connections state.
 	 * @param con The connection that changed
@@ -180,7 +269,7 @@ public abstract class MessageRouter {
 	 * @return True if the router has message with this id, false if not
 	 */
 	protected boolean hasMessage(String id) {
-		return this.messages.containsKey(id);
+		return this.messages.contains(id);
 	}
 	
 	/**
@@ -192,7 +281,30 @@ public abstract class MessageRouter {
 	 * this host as the final recipient.
 	 */
 	protected boolean isDeliveredMessage(Message m) {
-		return (this.deliveredMessages.containsKey(m.getId()));
+		return (this.deliveredIds.contains(m.getIdKey()));
+	}
+	
+	/**
+	 * Returns a summary vector of the messages this router has buffered
+	 * or received as the final recipient, i.e., the messages it would 
+	 * refuse as already seen.
+	 * @return A new summary vector
+	 */
+	protected SummaryVector getSummaryVector() {
+		return new SummaryVector(this.messages.getMessages(), 
+				this.deliveredIds.toArray());
+	}
+	
+	/**
+	 * Returns a number that changes whenever a message this router has
+	 * refused as already seen ({@link #DENIED_OLD}) could be accepted again,
+	 * i.e., when a message is removed from the buffer or a buffered message
+	 * is changed. Senders can skip re-offering refused messages as long
+	 * as the number stays the same.
+	 * @return The refusal version
+	 */
+	protected long getRefusalVersion() {
+		return this.messages.getChangeCount();
 	}
 	
 	/**
@@ -204,7 +316,33 @@ public abstract class MessageRouter {
 	 * @return a reference to the messages of this router in collection
 	 */
 	public Collection<Message> getMessageCollection() {
-		return this.messages.values();
+		return this.messages.getMessages();
+	}
+	
+	/**
+	 * Returns the message buffer of this router
+	 * @return The message buffer
+	 */
+	protected MessageBuffer getMessageBuffer() {
+		return this.messages;
+	}
+	
+	/**
+	 * Returns the sending queue mode of this router
+	 * @return The queue mode ({@link #Q_MODE_RANDOM}, {@link #Q_MODE_FIFO}
+	 * or {@link #Q_MODE_POLICY})
+	 */
+	protected int getSendQueueMode() {
+		return this.sendQueueMode;
+	}
+	
+	/**
+	 * Returns the buffer policy used for choosing the messages to drop
+	 * @return The drop policy or null if the default policy (drop the 
+	 * oldest message first) is used
+	 */
+	public BufferPolicy getDropPolicy() {
+		return this.dropPolicy;
 	}
 	
 	/**
@@ -231,17 +369,11 @@ public abstract class MessageRouter {
 	 * size isn't defined)
 	 */
 	public int getFreeBufferSize() {
-		int occupancy = 0;
-		
 		if (this.getBufferSize() == Integer.MAX_VALUE) {
 			return Integer.MAX_VALUE;
 		}
 		
-		for (Message m : getMessageCollection()) {
-			occupancy += m.getSize();
-		}
-		
-		return this.getBufferSize() - occupancy;
+		return (int)(this.getBufferSize() - this.messages.getOccupancy());
 	}
 	
 	/**
@@ -340,7 +472,10 @@ public abstract class MessageRouter {
 			addToMessages(aMessage, false);
 		}
 		else if (isFirstDelivery) {
-			this.deliveredMessages.put(id, aMessage);
+			this.deliveredIds.add(incoming.getIdKey());
+			if (this.deliveredMessages != null) {
+				this.deliveredMessages.put(incoming.getIdKey(), aMessage);
+			}
 		}
 		
 		for (MessageListener ml : this.mListeners) {
@@ -358,7 +493,16 @@ public abstract class MessageRouter {
 	 * @param from Who the message was from (previous hop).
 	 */
 	protected void putToIncomingBuffer(Message m, DTNHost from) {
-		this.incomingMessages.put(m.getId() + "_" + from.toString(), m);
+		int key = m.getIdKey();
+		IncomingMessage first = this.incomingMessages.get(key);
+		for (IncomingMessage in = first; in != null; in = in.next) {
+			if (in.from == from) {
+				in.msg = m; // replaces the earlier message from the same host
+				return;
+			}
+		}
+		this.incomingMessages.put(key, new IncomingMessage(m, from, first));
+		this.nrofIncoming++;
 	}
 	
 	/**
@@ -369,7 +513,26 @@ public abstract class MessageRouter {
 	 * @return The found message or null if such message wasn't found
 	 */
 	protected Message removeFromIncomingBuffer(String id, DTNHost from) {
-		return this.incomingMessages.remove(id + "_" + from.toString());
+		int key = Message.getIdKey(id);
+		IncomingMessage prev = null;
+		for (IncomingMessage in = this.incomingMessages.get(key); in != null;
+				in = in.next) {
+			if (in.from == from) {
+				if (prev != null) {
+					prev.next = in.next;
+				}
+				else if (in.next != null) {
+					this.incomingMessages.put(key, in.next);
+				}
+				else {
+					this.incomingMessages.remove(key);
+				}
+				this.nrofIncoming--;
+				return in.msg;
+			}
+			prev = in;
+		}
+		return null;
 	}
 	
 	/**
@@ -379,7 +542,7 @@ public abstract class MessageRouter {
 	 * @return True if such message is incoming right now
 	 */
 	protected boolean isIncomingMessage(String id) {
-		return this.incomingMessages.containsKey(id);
+		return this.incomingMessages.containsKey(Message.getIdKey(id));
 	}
 	
 	/**
@@ -390,7 +553,7 @@ public abstract class MessageRouter {
 	 * message, if false, nothing is informed.
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
-		this.messages.put(m.getId(), m);
+		this.messages.add(m);
 		
 		if (newMessage) {
 			for (MessageListener ml : this.mListeners) {
@@ -501,6 +664,29 @@ public abstract class MessageRouter {
 				}
 			});
 			break;
+		case Q_MODE_POLICY:
+			if (list.isEmpty()) {
+				break;
+			}
+			if (list.get(0) instanceof Tuple) {
+				Collections.sort(list, 
+						new Comparator<Tuple<Message, Connection>>() {
+					/** Compares two tuples by their messages' policy order */
+					public int compare(Tuple<Message, Connection> t1, 
+							Tuple<Message, Connection> t2) {
+						return sendQueuePolicy.compare(t1.getKey(), 
+								t2.getKey());
+					}
+				});
+			}
+			else if (list.get(0) instanceof Message) {
+				Comparator<Message> policyOrder = sendQueuePolicy;
+				Collections.sort(list, policyOrder);
+			}
+			else {
+				throw new SimError("Invalid type of objects in the list");
+			}
+			break;
 		/* add more queue modes here */
 		default:
 			throw new SimError("Unknown queue mode " + sendQueueMode);
@@ -528,6 +714,8 @@ public abstract class MessageRouter {
 				return 0;
 			}
 			return (diff < 0 ? -1 : 1);
+		case Q_MODE_POLICY:
+			return sendQueuePolicy.compare(m1, m2);
 		/* add more queue modes here */
 		default:
 			throw new SimError("Unknown queue mode " + sendQueueMode);
@@ -540,9 +728,9 @@ public abstract class MessageRouter {
 	 */
 	public RoutingInfo getRoutingInfo() {
 		RoutingInfo ri = new RoutingInfo(this);
-		RoutingInfo incoming = new RoutingInfo(this.incomingMessages.size() + 
+		RoutingInfo incoming = new RoutingInfo(this.nrofIncoming + 
 				" incoming message(s)");
-		RoutingInfo delivered = new RoutingInfo(this.deliveredMessages.size() +
+		RoutingInfo delivered = new RoutingInfo(this.deliveredIds.size() +
 				" delivered message(s)");
 		
 		RoutingInfo cons = new RoutingInfo(host.getConnections().size() + 
@@ -552,12 +740,22 @@ public abstract class MessageRouter {
 		ri.addMoreInfo(delivered);
 		ri.addMoreInfo(cons);
 		
-		for (Message m : this.incomingMessages.values()) {
-			incoming.addMoreInfo(new RoutingInfo(m));
+		for (IncomingMessage first : this.incomingMessages.values()) {
+			for (IncomingMessage in = first; in != null; in = in.next) {
+				incoming.addMoreInfo(new RoutingInfo(in.msg));
+			}
 		}
 		
-		for (Message m : this.deliveredMessages.values()) {
-			delivered.addMoreInfo(new RoutingInfo(m + " path:" + m.getHops()));
+		if (this.deliveredMessages != null) {
+			for (Message m : this.deliveredMessages.values()) {
+				delivered.addMoreInfo(new RoutingInfo(m + " path:" + 
+						m.getHops()));
+			}
+		}
+		else {
+			for (int key : this.deliveredIds.toArray()) {
+				delivered.addMoreInfo(new RoutingInfo(Message.getIdOfKey(key)));
+			}
 		}
 		
 		for (Connection c : host.getConnections()) {
@@ -621,4 +819,20 @@ public abstract class MessageRouter {
 			+ " messages";
 	}
 
+	/**
+	 * A message being transferred and the host it is transferred from.
+	 * Messages with the same ID are chained.
+	 */
+	private static class IncomingMessage {
+		private Message msg;
+		private DTNHost from;
+		private IncomingMessage next;
+
+		private IncomingMessage(Message msg, DTNHost from,
+				IncomingMessage next) {
+			this.msg = msg;
+			this.from = from;
+			this.next = next;
+		}
+	}
 }
@@ -9,7 +9,7 @@ import java.util.List;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
-import core.MessageListener;
+import core.MessageCopyListener;
 import core.Settings;
 import core.SimError;
 
@@ -21,6 +21,8 @@ public class MulticopyRouter extends ActiveRouter {
 	
 	public static final String ALLOWABLE_COPIES = "copies";
 	private int copies;
+	/** listeners informed about copy splits (or null if not set) */
+	private List<MessageCopyListener> copyListeners;
 	
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -42,6 +44,7 @@ public class MulticopyRouter extends ActiveRouter {
 	protected MulticopyRouter(MulticopyRouter r) {
 		super(r);
 		this.copies = r.copies;
+		this.copyListeners = r.copyListeners;
 	}
 			
 	@Override
@@ -64,7 +67,7 @@ public class MulticopyRouter extends ActiveRouter {
 		// TODO Auto-generated method stub
 		//check if connection has already been made in this instance
 		//and deny message transfer if true
-		Connection con = getConnection(from);
+		Connection con = from.getConnection(getHost());
 		if(con.isDone())
 			return DENIED_OLD;
 		
@@ -75,21 +78,9 @@ public class MulticopyRouter extends ActiveRouter {
 		Message newMessage = distribute(m, from);
 		con.setDone(true);
 		
-		if(newMessage.getTo().contains(getHost()))
-			System.out.println("Message "+ newMessage + " delivered by "+from.toString());
 		return super.receiveMessage(newMessage, from);
 	}
 
-	private Connection getConnection(DTNHost from) {
-		// TODO Auto-generated method stub
-		List<Connection> cons = from.getConnections();
-		for(Connection con : cons) {
-			if(con.getOtherNode(from)==getHost())
-				return con;
-		}
-		return null;
-	}
-
 	@Override
 	public void changedConnection(Connection con) {
 		// TODO Auto-generated method stub
@@ -98,6 +89,18 @@ public class MulticopyRouter extends ActiveRouter {
 		super.changedConnection(con);
 	}
 
+	/**
+	 * Returns false since an offer of a message the other host already has
+	 * still redistributes the message's copies between the hosts (see
+	 * {@link #receiveMessage(Message, DTNHost)})
+	 * @param m The message
+	 * @return false
+	 */
+	@Override
+	protected boolean canSkipSeen(Message m) {
+		return false;
+	}
+
 	private Message distribute(Message m, DTNHost from) {		
 		if(isCommunityCenter(from)||isCommunityCenter(getHost()))
 			return doHoming(from, m);			
@@ -108,84 +111,65 @@ public class MulticopyRouter extends ActiveRouter {
 	private Message doHoming(DTNHost from, Message m) {
 		// TODO Auto-generated method stub
 		Message newMessage = m.replicate();
-		System.out.print(newMessage.toString()+"[" + existingCopies(getHost(),m) + "],[" + newMessage.getCopies()+"] ["
-				+getHost().getCcap()+"]["+from.getCcap()+"]");
+		int existing = existingCopies(m);
 		
 		//calculate total number of message copies present in the connection, and divide the ratio
-		int total_copies= newMessage.getCopies() + existingCopies(getHost(),m);
+		int total_copies= newMessage.getCopies() + existing;
 		int newcopies = total_copies-1;
 		int oldcopies = 1;
 		
-		//Modify ccap value for receiver and sender
-		//reduce number of copies
-		from.reduceCcap(m.getCopies());
-		getHost().reduceCcap(existingCopies(getHost(),m));
-		
-		//set divided copies in messages
+		//set divided copies in messages (ccap values follow the buffers)
 		if(isCommunityCenter(getHost())) {
 			newMessage.setCopies(newcopies);
-			setCopies(getHost(),newMessage,newcopies);
-			m.setCopies(oldcopies);
-			setCopies(from,m,oldcopies);	
-			
-			//add new ccap value to nodes
-			from.addCcap(oldcopies);
-			getHost().addCcap(newcopies);
+			setCopies(m.getId(), newcopies);
+			setCopies(from, m, oldcopies);
 		}
 		else {
 			newMessage.setCopies(oldcopies);
-			setCopies(getHost(),newMessage,oldcopies);
-			m.setCopies(newcopies);
-			setCopies(from,m,newcopies);
-			
-			//add new ccap value to nodes
-			from.addCcap(newcopies);
-			getHost().addCcap(oldcopies);
+			setCopies(m.getId(), oldcopies);
+			setCopies(from, m, newcopies);
 		}
 		
-		
-		System.out.println(" recieved by "
-				+getHost().toString()+"["+getHost().getCcap()+"] from "
-				+from.toString()+"["+from.getCcap()+"] with "
-				+newMessage.getCopies()+" copies, still have "+m.getCopies()+" copies");
+		copiesSplit(m, from, newMessage.getCopies());
 		return newMessage;
 	}
 
 	private Message doRoaming(DTNHost from, Message m) {
 		// TODO Auto-generated method stub
 		Message newMessage = m.replicate();
-		
-		System.out.print(newMessage.toString()+"[" + existingCopies(getHost(),m) + "],[" + newMessage.getCopies()+"] ["
-				+getHost().getCcap()+"]["+from.getCcap()+"]");
+		int existing = existingCopies(m);
 		
 		//calculate total number of message copies present in the connection, and divide the ratio
-		int total_copies= newMessage.getCopies() + existingCopies(getHost(),m);
+		int total_copies= newMessage.getCopies() + existing;
 		int oldcopies = total_copies/2;
 		int newcopies = total_copies - oldcopies;
 		
-		//Modify ccap value for receiver and sender
-		//reduce number of copies
-		from.reduceCcap(m.getCopies());
-		getHost().reduceCcap(existingCopies(getHost(),m));
-		
-		//set divided copies in messages
+		//set divided copies in messages (ccap values follow the buffers)
 		newMessage.setCopies(newcopies);
-		setCopies(getHost(),newMessage,newcopies);
-		m.setCopies(oldcopies);
-		setCopies(from,m,oldcopies);
-		
-		//add new ccap value to nodes
-		from.addCcap(oldcopies);
-		getHost().addCcap(newcopies);
+		setCopies(m.getId(), newcopies);
+		setCopies(from, m, oldcopies);
 		
-		System.out.println(" recieved by "
-				+getHost().toString()+"["+getHost().getCcap()+"] from "
-				+from.toString()+"["+from.getCcap()+"] with "
-				+newMessage.getCopies()+" copies, still have "+m.getCopies()+" copies");
+		copiesSplit(m, from, newMessage.getCopies());
 		return newMessage;
 
 	}
 
+	/**
+	 * Informs the copy listeners (if any) that the copies of a message
+	 * were split between the sending host and this host.
+	 * @param m The sender's message with the copies it keeps
+	 * @param from The sending host
+	 * @param received Number of copies this host received
+	 */
+	private void copiesSplit(Message m, DTNHost from, int received) {
+		if (this.copyListeners == null || this.copyListeners.isEmpty()) {
+			return; // no iterator for the common case of no listeners
+		}
+		for (MessageCopyListener cl : this.copyListeners) {
+			cl.copiesSplit(m, from, getHost(), m.getCopies(), received);
+		}
+	}
+
 	private boolean isCommunityCenter(DTNHost host) {
 		// TODO Auto-generated method stub
 		if(host.toString().startsWith("CC"))
@@ -193,19 +177,84 @@ public class MulticopyRouter extends ActiveRouter {
 		return false;
 	}
 
-	private int existingCopies(DTNHost host, Message m) {
-		for (Message e : host.getMessageCollection()) {
-			if(e.getId() == m.getId())
-				return e.getCopies();
+	/**
+	 * Returns the number of copies of the given message this router's
+	 * buffer holds (0 if the message isn't buffered). The lookup uses the
+	 * id-keyed message buffer, so it doesn't depend on the buffer size.
+	 * @param m The message whose copies are looked up
+	 * @return The number of buffered copies
+	 */
+	private int existingCopies(Message m) {
+		Message e = getMessage(m.getId());
+		if (e == null) {
+			return 0;
+		}
+		return countedCopies(e);
+	}
+	
+	/**
+	 * Sets the number of copies of a buffered message and updates the
+	 * host's copy capacity by the difference. Nothing is done if the
+	 * message isn't in the buffer.
+	 * @param id Identifier of the message
+	 * @param copies The new number of copies
+	 */
+	protected void setCopies(String id, int copies) {
+		Message e = getMessage(id);
+		if (e == null) {
+			return;
 		}
-		return 0;
+		getHost().reduceCcap(countedCopies(e));
+		e.setCopies(copies);
+		getMessageBuffer().reindex(id);
+		getHost().addCcap(countedCopies(e));
 	}
 	
+	/**
+	 * Sets the number of copies the sending host keeps of a message.
+	 * The copies are set through the sender's router (if it is a multicopy
+	 * router) so that its copy capacity stays in sync, and to the given 
+	 * message instance in case it is not the buffered one.
+	 * @param host The sending host
+	 * @param m The message that was offered by the host
+	 * @param copies The number of copies the host keeps
+	 */
 	private void setCopies(DTNHost host, Message m, int copies) {
-		for (Message e : host.getMessageCollection()) {
-			if(e.getId() == m.getId())
-				e.setCopies(copies);
+		MessageRouter r = host.getRouter();
+		if (r instanceof MulticopyRouter) {
+			((MulticopyRouter)r).setCopies(m.getId(), copies);
+		}
+		m.setCopies(copies);
+	}
+	
+	/**
+	 * Returns the number of copies of a message that are counted in the
+	 * host's copy capacity (messages without copy limit count as zero)
+	 * @param m The message
+	 * @return The number of counted copies
+	 */
+	private int countedCopies(Message m) {
+		return Math.max(m.getCopies(), 0);
+	}
+	
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		Message old = getMessage(m.getId());
+		if (old != null) {
+			getHost().reduceCcap(countedCopies(old));
+		}
+		super.addToMessages(m, newMessage);
+		getHost().addCcap(countedCopies(m));
+	}
+	
+	@Override
+	protected Message removeFromMessages(String id) {
+		Message m = super.removeFromMessages(id);
+		if (m != null) {
+			/* covers deliveries, drops and TTL expiry */
+			getHost().reduceCcap(countedCopies(m));
 		}
+		return m;
 	}
 	
 	@Override
@@ -220,4 +269,13 @@ public class MulticopyRouter extends ActiveRouter {
 	void setCopies(int copies) {
 		this.copies = copies;
 	}
+	
+	/**
+	 * Sets the listeners that are informed about message copy splits.
+	 * Replicates of this router share the same listener list.
+	 * @param copyListeners The listeners
+	 */
+	public void setCopyListeners(List<MessageCopyListener> copyListeners) {
+		this.copyListeners = copyListeners;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,123 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import core.Message;
+import core.SimClock;
+
+/**
+ * Cached sending queue of a router. The queue contains the messages of
+ * the router's buffer in the order of the router's sending queue mode,
+ * i.e., in the same order as {@link MessageRouter#sortByQueueMode(List)}
+ * would put a copy of the message collection. The queue is rebuilt only
+ * when the buffer's version (see {@link MessageBuffer#getVersion()})
+ * has changed or, in the random queue mode, when the seed (the integer
+ * part of the simulation time) has changed. Checking the cache is thus a
+ * constant time operation.
+ * <p>Since the version is the only change detection, a change to a
+ * buffered message that affects its queue position (e.g., its receive time
+ * or a property a buffer policy uses) is seen only after the message has
+ * been re-indexed with {@link MessageBuffer#reindex(String)} or the buffer
+ * has changed otherwise.</p>
+ * <p>Subclasses can leave messages out of the queue by overriding
+ * {@link #accept(Message)}. The filter result is cached too, so a
+ * filter that depends on the state of the messages requires the same
+ * re-indexing when that state changes.</p>
+ */
+public class SendQueue {
+	/** The router whose messages are queued */
+	private MessageRouter router;
+	/** Is the queue filtered with {@link #accept(Message)} */
+	private boolean filtered;
+
+	/** Buffer version of the cached queue */
+	private long version;
+	/** Integer simulation time when the queue was shuffled */
+	private int shuffleTime;
+	/** The accepted messages in the message collection's order */
+	private ArrayList<Message> input;
+	/** The cached queue */
+	private List<Message> queue;
+
+	/**
+	 * Creates a sending queue for a router.
+	 * @param router The router whose messages are queued
+	 * @param filtered True if {@link #accept(Message)} is overridden
+	 */
+	public SendQueue(MessageRouter router, boolean filtered) {
+		this.router = router;
+		this.filtered = filtered;
+		this.version = -1;
+		this.input = new ArrayList<Message>();
+		this.queue = Collections.emptyList();
+	}
+
+	/**
+	 * Returns true if a message should be in the queue. This default
+	 * implementation accepts all messages.
+	 * @param m The message
+	 * @return true if the message should be in the queue
+	 */
+	protected boolean accept(Message m) {
+		return true;
+	}
+
+	/**
+	 * Returns the messages in the sending order. The returned list is
+	 * shared and must not be modified, but it is not modified by the
+	 * queue either, i.e., the list remains valid for iteration even if the
+	 * buffer is modified.
+	 * @return The (cached) sending queue
+	 */
+	public List<Message> getQueue() {
+		MessageBuffer buffer = router.getMessageBuffer();
+
+		if (buffer.getVersion() != version) {
+			input.clear();
+			for (Message m : buffer.getMessages()) {
+				if (accept(m)) {
+					input.add(m);
+				}
+			}
+			version = buffer.getVersion();
+			queue = null;
+		}
+
+		if (router.getSendQueueMode() == MessageRouter.Q_MODE_RANDOM) {
+			int time = SimClock.getIntTime();
+			if (queue == null || time != shuffleTime) {
+				List<Message> shuffled = new ArrayList<Message>(input);
+				Collections.shuffle(shuffled, new Random(time));
+				queue = shuffled;
+				shuffleTime = time;
+			}
+		}
+		else if (queue == null) {
+			sort();
+		}
+
+		return queue;
+	}
+
+	/**
+	 * Sorts the input to a new queue using the queue mode's comparison.
+	 * Ties are kept in the input order (the sort is stable).
+	 */
+	private void sort() {
+		List<Message> sorted = new ArrayList<Message>(input);
+		Collections.sort(sorted, new Comparator<Message>() {
+			public int compare(Message m1, Message m2) {
+				return router.compareByQueueMode(m1, m2);
+			}
+		});
+		queue = sorted;
+	}
+}
@@ -4,12 +4,12 @@
  */
 package routing;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import core.Connection;
 import core.DTNHost;
 import core.Message;
+import core.MessageListener;
 import core.Settings;
 
 /**
@@ -30,6 +30,8 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		"copies";
 	
 	protected int initialNrofCopies;
+	/** cached sending queue of the messages with copies left */
+	private SendQueue copiesLeftQueue;
 	protected boolean isBinary;
 
 	public SprayAndWaitRouter(Settings s) {
@@ -73,6 +75,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		}
 		
 		msg.updateProperty(MSG_COUNT_PROPERTY, nrofCopies);
+		getMessageBuffer().reindex(id);
 		return msg;
 	}
 	
@@ -98,9 +101,8 @@ public class SprayAndWaitRouter extends ActiveRouter {
 			return;
 		}
 		
-		/* create a list of SAWMessages that have copies left to distribute */
-		@SuppressWarnings(value = "unchecked")
-		List<Message> copiesLeft = sortByQueueMode(getMessagesWithCopiesLeft());
+		/* the SAWMessages that have copies left to distribute */
+		List<Message> copiesLeft = getMessagesWithCopiesLeft();
 		
 		if (copiesLeft.size() > 0) {
 			/* try to send those messages */
@@ -109,23 +111,28 @@ public class SprayAndWaitRouter extends ActiveRouter {
 	}
 	
 	/**
-	 * Creates and returns a list of messages this router is currently
-	 * carrying and still has copies left to distribute (nrof copies > 1).
+	 * Returns a list of messages this router is currently carrying and 
+	 * still has copies left to distribute (nrof copies > 1) in the sending
+	 * queue order. The list is cached and must not be modified.
 	 * @return A list of messages that have copies left
 	 */
 	protected List<Message> getMessagesWithCopiesLeft() {
-		List<Message> list = new ArrayList<Message>();
-
-		for (Message m : getMessageCollection()) {
-			Integer nrofCopies = (Integer)m.getProperty(MSG_COUNT_PROPERTY);
-			assert nrofCopies != null : "SnW message " + m + " didn't have " + 
-				"nrof copies property!";
-			if (nrofCopies > 1) {
-				list.add(m);
+		return copiesLeftQueue.getQueue();
+	}
+	
+	@Override
+	public void init(DTNHost host, List<MessageListener> mListeners) {
+		super.init(host, mListeners);
+		this.copiesLeftQueue = new SendQueue(this, true) {
+			@Override
+			protected boolean accept(Message m) {
+				Integer nrofCopies = 
+					(Integer)m.getProperty(MSG_COUNT_PROPERTY);
+				assert nrofCopies != null : "SnW message " + m + 
+					" didn't have nrof copies property!";
+				return nrofCopies > 1;
 			}
-		}
-		
-		return list;
+		};
 	}
 	
 	/**
@@ -155,6 +162,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 			nrofCopies--;
 		}
 		msg.updateProperty(MSG_COUNT_PROPERTY, nrofCopies);
+		getMessageBuffer().reindex(msgId);
 	}
 	
 	@Override
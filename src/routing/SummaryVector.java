@@ -0,0 +1,66 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import core.Message;
+
+/**
+ * Summary vector of the messages a node has seen, as exchanged by the
+ * nodes in the beginning of a contact in epidemic routing. The vector is a
+ * sorted array of the interned keys of the message IDs (see 
+ * {@link Message#getIdKey()}). Unique IDs of message instances can't be
+ * used since replicates of the same message have different unique IDs.
+ */
+public class SummaryVector {
+	/** Size of one vector entry on the link (bytes) */
+	public static final int ENTRY_SIZE = 4;
+
+	/** Sorted keys of the message IDs */
+	private int[] keys;
+
+	/**
+	 * Creates a summary vector of messages
+	 * @param messages The buffered messages
+	 * @param deliveredKeys Interned IDs of the messages delivered to the
+	 * node (see {@link Message#getIdKey()})
+	 */
+	public SummaryVector(Collection<Message> messages, int[] deliveredKeys) {
+		this.keys = new int[messages.size() + deliveredKeys.length];
+		int i = 0;
+		for (Message m : messages) {
+			keys[i++] = m.getIdKey();
+		}
+		System.arraycopy(deliveredKeys, 0, keys, i, deliveredKeys.length);
+		Arrays.sort(keys);
+	}
+
+	/**
+	 * Returns true if the vector contains a message with the given ID
+	 * @param idKey Interned ID of the message (see {@link Message#getIdKey()})
+	 * @return true if the message is in the vector
+	 */
+	public boolean contains(int idKey) {
+		return Arrays.binarySearch(keys, idKey) >= 0;
+	}
+
+	/**
+	 * Returns the number of entries in the vector
+	 * @return The number of entries
+	 */
+	public int size() {
+		return keys.length;
+	}
+
+	/**
+	 * Returns the size of the vector on the link
+	 * @return The size in bytes
+	 */
+	public int getByteSize() {
+		return keys.length * ENTRY_SIZE;
+	}
+}
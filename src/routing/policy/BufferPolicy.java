@@ -0,0 +1,44 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing.policy;
+
+import java.util.Comparator;
+
+import core.Message;
+
+/**
+ * Superclass for buffer policies. A buffer policy defines an order for
+ * the messages in a router's buffer: when the buffer is full, the messages
+ * are dropped in this order, and if the policy is used as the sending
+ * queue mode, the messages are also sent in this order. The order is
+ * defined by a numeric key so that routers can keep the buffered messages
+ * in an ordered index instead of sorting them.
+ */
+public abstract class BufferPolicy implements Comparator<Message> {
+
+	/**
+	 * Returns the ordering key of a message. Messages with smaller keys
+	 * come first in the order (i.e., are dropped first).
+	 * @param m The message
+	 * @return The key of the message
+	 */
+	public abstract double getKey(Message m);
+
+	/**
+	 * Compares two messages by their keys
+	 * @param m1 The first message
+	 * @param m2 The second message
+	 * @return -1, 0 or 1 if the key of the first message is smaller than,
+	 * equal to or bigger than the key of the second message
+	 */
+	public int compare(Message m1, Message m2) {
+		return Double.compare(getKey(m1), getKey(m2));
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName();
+	}
+}
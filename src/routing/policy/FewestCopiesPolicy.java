@@ -0,0 +1,21 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing.policy;
+
+import core.Message;
+
+/**
+ * Buffer policy that drops the message with the fewest copies left first
+ * (see {@link Message#getCopies()}). Messages without a copy limit are
+ * dropped last.
+ */
+public class FewestCopiesPolicy extends BufferPolicy {
+
+	@Override
+	public double getKey(Message m) {
+		int copies = m.getCopies();
+		return copies < 0 ? Double.MAX_VALUE : copies;
+	}
+}
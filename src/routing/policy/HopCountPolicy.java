@@ -0,0 +1,19 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing.policy;
+
+import core.Message;
+
+/**
+ * Buffer policy that drops the message that has travelled the most hops
+ * first.
+ */
+public class HopCountPolicy extends BufferPolicy {
+
+	@Override
+	public double getKey(Message m) {
+		return -m.getHopCount();
+	}
+}
@@ -0,0 +1,19 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing.policy;
+
+import core.Message;
+
+/**
+ * Buffer policy that drops the message with the lowest remaining TTL
+ * first. Messages with an infinite TTL are dropped last.
+ */
+public class LowestTtlPolicy extends BufferPolicy {
+
+	@Override
+	public double getKey(Message m) {
+		return m.getExpiryTime();
+	}
+}
@@ -0,0 +1,18 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing.policy;
+
+import core.Message;
+
+/**
+ * Buffer policy that drops the most recently received message first.
+ */
+public class YoungestFirstPolicy extends BufferPolicy {
+
+	@Override
+	public double getKey(Message m) {
+		return -m.getReceiveTime();
+	}
+}
@@ -0,0 +1,103 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import input.BinaryMapCache;
+import input.WKTMapReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.map.MapNode;
+import movement.map.SimMap;
+
+/**
+ * Tests for the binary map cache
+ */
+public class BinaryMapCacheTest extends TestCase {
+	private static final String ROADS =
+		"LINESTRING (1.0 1.0, 2.0 1.0, 3.0 1.0, 8.0 1.0)\n" +
+		"LINESTRING (1.0 1.0, 1.0 3.0, 2.0 3.0)\n";
+	private static final String PATHS =
+		"LINESTRING (2.0 1.0, 2.0 0.0, 3.0 0.0, 3.0 1.0)\n";
+
+	private List<File> files;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		files = new ArrayList<File>();
+		files.add(createFile(ROADS));
+		files.add(createFile(PATHS));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		for (File f : files) {
+			new File(f.getPath() + BinaryMapCache.CACHE_EXT).delete();
+			f.delete();
+		}
+	}
+
+	private File createFile(String contents) throws IOException {
+		File f = File.createTempFile("mapCacheTest", ".wkt");
+		PrintWriter out = new PrintWriter(f);
+		out.print(contents);
+		out.close();
+		return f;
+	}
+
+	private SimMap readWkt() throws IOException {
+		WKTMapReader r = new WKTMapReader(true);
+		for (int i=0; i<files.size(); i++) {
+			r.addPaths(files.get(i), i + 1);
+		}
+		return r.getMap();
+	}
+
+	public void testCachedMapIsIdentical() throws IOException {
+		BinaryMapCache cache = new BinaryMapCache(files);
+		assertNull(cache.read()); // not written yet
+
+		SimMap map = readWkt();
+		cache.write(map);
+		SimMap cached = new BinaryMapCache(files).read();
+		assertNotNull(cached);
+
+		List<MapNode> nodes = map.getNodes();
+		List<MapNode> cachedNodes = cached.getNodes();
+		assertEquals(nodes.size(), cachedNodes.size());
+		for (int i=0; i<nodes.size(); i++) {
+			MapNode n = nodes.get(i);
+			MapNode c = cachedNodes.get(i);
+			assertEquals(n.getLocation(), c.getLocation());
+			for (int t = MapNode.MIN_TYPE; t <= MapNode.MAX_TYPE; t++) {
+				assertEquals(n.isType(t), c.isType(t));
+			}
+			assertEquals(n.getNeighbors().size(), c.getNeighbors().size());
+			for (int j=0; j<n.getNeighbors().size(); j++) {
+				assertEquals(n.getNeighbors().get(j).getLocation(),
+						c.getNeighbors().get(j).getLocation());
+			}
+			assertSame(c, cached.getNodeByCoord(c.getLocation()));
+		}
+		assertEquals(map.getMinBound(), cached.getMinBound());
+		assertEquals(map.getMaxBound(), cached.getMaxBound());
+	}
+
+	public void testChangedFileInvalidatesCache() throws IOException {
+		new BinaryMapCache(files).write(readWkt());
+
+		PrintWriter out = new PrintWriter(files.get(1));
+		out.print(PATHS + "LINESTRING (8.0 1.0, 9.0 1.0)\n");
+		out.close();
+		assertNull(new BinaryMapCache(files).read());
+	}
+}
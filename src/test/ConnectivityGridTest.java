@@ -0,0 +1,117 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+
+/**
+ * Tests for the ConnectivityGrid with interfaces of different ranges
+ */
+public class ConnectivityGridTest extends TestCase {
+	private static final double SHORT_RANGE = 10;
+	private static final double LONG_RANGE = 150;
+	private static final int WORLD_SIZE = 1000;
+	
+	private Random rng;
+	private TestUtils utils;
+	private List<NetworkInterface> interfaces;
+	
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings ts = new TestSettings();
+		ConnectivityGrid.reset();
+		
+		this.rng = new Random(3);
+		this.utils = new TestUtils(null, null, ts);
+		this.interfaces = new ArrayList<NetworkInterface>();
+	}
+	
+	private void createHosts(double range, int nrof) {
+		utils.setTransmitRange(range);
+		for (int i=0; i<nrof; i++) {
+			DTNHost host = utils.createHost(new Coord(
+					rng.nextDouble() * WORLD_SIZE, 
+					rng.nextDouble() * WORLD_SIZE));
+			this.interfaces.add(host.getInterfaces().get(0));
+		}
+	}
+	
+	private ConnectivityGrid getGrid() {
+		return ConnectivityGrid.ConnectivityGridFactory(
+				interfaces.get(0).getInterfaceType().hashCode(), 
+				SHORT_RANGE);
+	}
+	
+	public void testShortRangeCells() {
+		createHosts(SHORT_RANGE, 1);
+		createHosts(LONG_RANGE, 1);
+		assertTrue(getGrid().toString().endsWith("cell size=10"));
+	}
+	
+	public void testCellsShrink() {
+		createHosts(LONG_RANGE, 1);
+		createHosts(SHORT_RANGE, 1);
+		assertTrue(getGrid().toString().endsWith("cell size=10"));
+	}
+	
+	public void testCellsShrinkWithHostsOutOfBounds() {
+		utils.setTransmitRange(LONG_RANGE);
+		DTNHost host = utils.createHost(new Coord(WORLD_SIZE + 40, 
+				WORLD_SIZE + 40));
+		this.interfaces.add(host.getInterfaces().get(0));
+		createHosts(SHORT_RANGE, 1);
+		ConnectivityGrid grid = getGrid();
+		assertTrue(grid.toString().endsWith("cell size=10"));
+		assertTrue(grid.getAllInterfaces().contains(
+				host.getInterfaces().get(0)));
+	}
+	
+	public void testNearInterfacesWithMixedRanges() {
+		createHosts(SHORT_RANGE, 300);
+		createHosts(LONG_RANGE, 40);
+		ConnectivityGrid grid = getGrid();
+		
+		for (int round=0; round<10; round++) {
+			for (NetworkInterface ni : this.interfaces) {
+				if (rng.nextBoolean()) {
+					ni.getHost().setLocation(new Coord(
+						rng.nextDouble() * WORLD_SIZE, 
+						rng.nextDouble() * WORLD_SIZE));
+				}
+				grid.updateLocation(ni);
+			}
+			
+			for (NetworkInterface ni : this.interfaces) {
+				Collection<NetworkInterface> near = 
+					grid.getNearInterfaces(ni);
+				HashSet<NetworkInterface> unique = 
+					new HashSet<NetworkInterface>(near);
+				assertEquals("duplicate interfaces", near.size(), 
+						unique.size());
+				
+				for (NetworkInterface other : this.interfaces) {
+					double range = Math.min(ni.getTransmitRange(), 
+							other.getTransmitRange());
+					if (ni.getLocation().distance(other.getLocation()) <=
+							range) {
+						assertTrue(other + " not found for " + ni, 
+								unique.contains(other));
+					}
+				}
+			}
+		}
+	}
+}
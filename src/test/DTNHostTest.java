@@ -0,0 +1,97 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import core.Connection;
+import core.DTNHost;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+
+/**
+ * Tests for the connection bookkeeping of DTNHost
+ */
+public class DTNHostTest extends TestCase {
+	private DTNHost h1;
+	private DTNHost h2;
+	private DTNHost h3;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		new TestSettings();
+		ConnectivityGrid.reset();
+		h1 = createHost(2);
+		h2 = createHost(2);
+		h3 = createHost(1);
+	}
+
+	private DTNHost createHost(int nrofInterfaces) {
+		List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+		for (int i=0; i<nrofInterfaces; i++) {
+			li.add(new TestInterface(1.0, 1));
+		}
+		ModuleCommunicationBus comBus = new ModuleCommunicationBus();
+		return new TestDTNHost(li, comBus);
+	}
+
+	private NetworkInterface ni(DTNHost h, int index) {
+		return h.getInterfaces().get(index);
+	}
+
+	public void testGetConnection() {
+		assertNull(h1.getConnection(h2));
+		assertEquals(0, h1.getConnections().size());
+
+		ni(h1, 1).connect(ni(h2, 1));
+		ni(h1, 0).connect(ni(h3, 0));
+		Connection c2 = ni(h1, 1).getConnections().get(0);
+		Connection c3 = ni(h1, 0).getConnections().get(0);
+		assertSame(c2, h1.getConnection(h2));
+		assertSame(c2, h2.getConnection(h1));
+		assertSame(c3, h1.getConnection(h3));
+		assertSame(c3, h3.getConnection(h1));
+		assertNull(h2.getConnection(h3));
+
+		/* connection through the first interface is first in the list */
+		ni(h1, 0).connect(ni(h2, 0));
+		Connection c1 = ni(h1, 0).getConnections().get(1);
+		assertEquals(3, h1.getConnections().size());
+		assertSame(c1, h1.getConnection(h2));
+		assertSame(c1, h2.getConnection(h1));
+
+		ni(h1, 0).destroyConnection(ni(h2, 0));
+		assertSame(c2, h1.getConnection(h2));
+		assertSame(c2, h2.getConnection(h1));
+		assertEquals(2, h1.getConnections().size());
+
+		ni(h2, 1).destroyConnection(ni(h1, 1));
+		assertNull(h1.getConnection(h2));
+		assertNull(h2.getConnection(h1));
+		assertEquals(1, h1.getConnections().size());
+		assertEquals(0, h2.getConnections().size());
+
+		ni(h3, 0).destroyConnection(ni(h1, 0));
+		assertNull(h1.getConnection(h3));
+		assertEquals(0, h1.getConnections().size());
+		assertEquals(0, h3.getConnections().size());
+	}
+
+	public void testConnectionsUnmodifiable() {
+		ni(h3, 0).connect(ni(h1, 0));
+		try {
+			h3.getConnections().clear();
+			fail("Connection list was modifiable");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		assertEquals(1, h3.getConnections().size());
+	}
+}
@@ -5,8 +5,10 @@
 package test;
 
 import java.util.List;
+import java.util.Random;
 
 import junit.framework.TestCase;
+import movement.map.AStarPathFinder;
 import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
 import core.Coord;
@@ -73,6 +75,84 @@ public class DijkstraPathFinderTest extends TestCase {
 		checkPath(getPath(n8,n4), n8, n7, n6, n5, n4);
 	}
 	
+	public void testMapChange() {
+		checkPath(getPath(n1,n3), n1, n2, n3);
+		checkPath(getPath(n1,n3), n1, n2, n3); // from the path cache
+
+		n1.addNeighbor(n3); // a straight road from n1 to n3
+		checkPath(getPath(n1,n3), n1, n3);
+		checkPath(getPath(n4,n8), n4, n5, n6, n7, n8);
+
+		MapNode n9 = newNode(30,0);
+		assertEquals(0, getPath(n1,n9).size()); // not connected
+		n3.addNeighbor(n9);
+		checkPath(getPath(n1,n9), n1, n3, n9);
+	}
+
+	public void testPrecomputedPaths() {
+		r.addPrecomputedSource(n1);
+		r.addPrecomputedSource(n8);
+		testPathFinding();
+		checkPath(getPath(n8,n3), n8, n7, n3);
+
+		n1.addNeighbor(n3); // precomputed paths are invalidated
+		checkPath(getPath(n1,n3), n1, n3);
+		MapNode n9 = newNode(30,0);
+		assertEquals(0, getPath(n1,n9).size()); // not connected
+	}
+
+	public void testAStar() {
+		r = new AStarPathFinder(null);
+		testPathFinding();
+
+		/* random grid map with diagonals; ties are broken differently */
+		Random rng = new Random(1);
+		MapNode[][] grid = new MapNode[20][20];
+		for (int i=0; i<20; i++) {
+			for (int j=0; j<20; j++) {
+				grid[i][j] = newNode(100 + i*10 + rng.nextDouble(), j*10);
+				if (i > 0 && rng.nextInt(4) > 0) {
+					connect(grid[i][j], grid[i-1][j]);
+				}
+				if (j > 0 && rng.nextInt(4) > 0) {
+					connect(grid[i][j], grid[i][j-1]);
+				}
+				if (i > 0 && j > 0 && rng.nextInt(4) == 0) {
+					connect(grid[i][j], grid[i-1][j-1]);
+				}
+			}
+		}
+
+		DijkstraPathFinder dijkstra = new DijkstraPathFinder(null);
+		for (int k=0; k<200; k++) {
+			MapNode from = grid[rng.nextInt(20)][rng.nextInt(20)];
+			MapNode to = grid[rng.nextInt(20)][rng.nextInt(20)];
+			List<MapNode> expected = dijkstra.getShortestPath(from, to);
+			List<MapNode> path = r.getShortestPath(from, to);
+			assertEquals(expected.size() == 0, path.size() == 0);
+			if (path.size() > 0) {
+				assertEquals(from, path.get(0));
+				assertEquals(to, path.get(path.size() - 1));
+				assertEquals(length(expected), length(path), 0.000001);
+			}
+		}
+	}
+
+	private void connect(MapNode n1, MapNode n2) {
+		n1.addNeighbor(n2);
+		n2.addNeighbor(n1);
+	}
+
+	private double length(List<MapNode> path) {
+		double length = 0;
+		for (int i=1; i<path.size(); i++) {
+			assertTrue(path.get(i-1).getNeighbors().contains(path.get(i)));
+			length += path.get(i-1).getLocation().distance(
+					path.get(i).getLocation());
+		}
+		return length;
+	}
+
 	private void checkPath(List<MapNode> path, MapNode ... nodes) {
 		assertEquals(nodes.length,path.size());
 		
@@ -0,0 +1,138 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+import interfaces.IncrementalConnectivityGrid;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.World;
+
+/**
+ * Tests for the IncrementalConnectivityGrid
+ */
+public class IncrementalConnectivityGridTest extends TestCase {
+	private static final double RANGE = 30;
+	private static final double LONG_RANGE = 150;
+	private static final int NROF_HOSTS = 200;
+	private static final int WORLD_SIZE = 1000;
+	
+	private Random rng;
+	private List<NetworkInterface> interfaces;
+	private ConnectivityGrid grid;
+	private TestUtils utils;
+	
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.SETTINGS_NS + "." + World.INCREMENTAL_SCAN_S,
+				"true");
+		ConnectivityGrid.reset();
+		
+		this.rng = new Random(1);
+		this.utils = new TestUtils(null, null, ts);
+		utils.setTransmitRange(RANGE);
+		this.interfaces = new ArrayList<NetworkInterface>();
+		for (int i=0; i<NROF_HOSTS; i++) {
+			if (i == NROF_HOSTS - 10) {
+				utils.setTransmitRange(LONG_RANGE); // e.g. community centers
+			}
+			DTNHost host = utils.createHost(randomCoord());
+			this.interfaces.add(host.getInterfaces().get(0));
+		}
+		
+		NetworkInterface first = this.interfaces.get(0);
+		this.grid = ConnectivityGrid.ConnectivityGridFactory(
+				first.getInterfaceType().hashCode(), RANGE);
+	}
+	
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		new TestSettings(); // clear the incremental scan setting
+		ConnectivityGrid.reset();
+	}
+	
+	public void testIncrementalGridIsUsed() {
+		assertTrue(this.grid instanceof IncrementalConnectivityGrid);
+	}
+	
+	public void testInterfacesWithSameAddress() {
+		utils.setTransmitRange(RANGE);
+		NetworkInterface.reset();
+		NetworkInterface ni1 = utils.createHost(new Coord(WORLD_SIZE / 2, 
+				WORLD_SIZE / 2)).getInterfaces().get(0);
+		NetworkInterface.reset();
+		NetworkInterface ni2 = utils.createHost(new Coord(WORLD_SIZE / 2 + 1,
+				WORLD_SIZE / 2)).getInterfaces().get(0);
+		assertEquals(ni1.getAddress(), ni2.getAddress());
+		grid.updateLocation(ni1);
+		grid.updateLocation(ni2);
+		
+		assertTrue(grid.getNearInterfaces(ni1).contains(ni2));
+		assertTrue(grid.getNearInterfaces(ni2).contains(ni1));
+		assertFalse(grid.getNearInterfaces(ni1).contains(ni1));
+		assertFalse(grid.getNearInterfaces(ni2).contains(ni2));
+	}
+	
+	public void testNearInterfaces() {
+		for (int round=0; round<50; round++) {
+			/* move some of the hosts a little and some far away */
+			for (NetworkInterface ni : this.interfaces) {
+				int r = rng.nextInt(4);
+				Coord loc = ni.getLocation();
+				if (r == 0) {
+					ni.getHost().setLocation(randomCoord());
+				}
+				else if (r == 1) {
+					ni.getHost().setLocation(new Coord(
+						clamp(loc.getX() + rng.nextDouble() * 20 - 10),
+						clamp(loc.getY() + rng.nextDouble() * 20 - 10)));
+				}
+			}
+			
+			for (NetworkInterface ni : this.interfaces) {
+				this.grid.updateLocation(ni);
+			}
+			for (NetworkInterface ni : this.interfaces) {
+				assertEquals(inRange(ni), 
+						new ArrayList<NetworkInterface>(
+								this.grid.getNearInterfaces(ni)));
+			}
+		}
+	}
+	
+	/**
+	 * Returns the interfaces within range of an interface in address order
+	 * by checking all the interfaces
+	 */
+	private List<NetworkInterface> inRange(NetworkInterface ni) {
+		List<NetworkInterface> near = new ArrayList<NetworkInterface>();
+		for (NetworkInterface other : this.interfaces) {
+			double range = Math.min(ni.getTransmitRange(), 
+					other.getTransmitRange());
+			if (other != ni && 
+					ni.getLocation().distance(other.getLocation()) <= range) {
+				near.add(other);
+			}
+		}
+		return near;
+	}
+	
+	private Coord randomCoord() {
+		return new Coord(rng.nextDouble() * WORLD_SIZE, 
+				rng.nextDouble() * WORLD_SIZE);
+	}
+	
+	private double clamp(double value) {
+		return Math.max(0, Math.min(WORLD_SIZE - 1, value));
+	}
+}
@@ -0,0 +1,75 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.IntMap;
+
+/**
+ * Tests for the primitive int keyed map
+ */
+public class IntMapTest extends TestCase {
+	private IntMap<String> map;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		map = new IntMap<String>();
+	}
+
+	public void testPutGetRemove() {
+		assertNull(map.put(1, "a"));
+		assertNull(map.put(-5, "b"));
+		assertEquals("a", map.put(1, "c"));
+
+		assertEquals(2, map.size());
+		assertEquals("c", map.get(1));
+		assertEquals("b", map.get(-5));
+		assertNull(map.get(2));
+		assertTrue(map.containsKey(-5));
+
+		assertEquals("b", map.remove(-5));
+		assertNull(map.remove(-5));
+		assertFalse(map.containsKey(-5));
+		assertEquals(1, map.size());
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(1));
+	}
+
+	public void testAgainstHashMap() {
+		Random rng = new Random(42);
+		HashMap<Integer, String> ref = new HashMap<Integer, String>();
+
+		for (int i=0; i<20000; i++) {
+			int key = rng.nextInt(500) * (rng.nextBoolean() ? 1 : 64);
+			if (rng.nextInt(3) == 0) {
+				assertEquals(ref.remove(key), map.remove(key));
+			}
+			else {
+				String value = "v" + i;
+				assertEquals(ref.put(key, value), map.put(key, value));
+			}
+			assertEquals(ref.size(), map.size());
+		}
+
+		for (int key : ref.keySet()) {
+			assertEquals(ref.get(key), map.get(key));
+		}
+		HashSet<Integer> keys = new HashSet<Integer>();
+		for (int key : map.keys()) {
+			keys.add(key);
+		}
+		assertEquals(ref.keySet(), keys);
+		assertEquals(new HashSet<String>(ref.values()),
+				new HashSet<String>(map.values()));
+		assertEquals(ref.size(), map.values().size());
+	}
+}
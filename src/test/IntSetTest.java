@@ -0,0 +1,71 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.IntSet;
+
+/**
+ * Tests for the compact int set
+ */
+public class IntSetTest extends TestCase {
+	private IntSet set;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		set = new IntSet();
+	}
+
+	public void testAddAndContains() {
+		assertTrue(set.add(5));
+		assertTrue(set.add(-1));
+		assertTrue(set.add(70000));
+		assertFalse(set.add(5));
+
+		assertEquals(3, set.size());
+		assertTrue(set.contains(5));
+		assertTrue(set.contains(-1));
+		assertTrue(set.contains(70000));
+		assertFalse(set.contains(4));
+		assertFalse(set.contains(70000 - 65536));
+
+		int[] values = set.toArray();
+		assertEquals(3, values.length);
+		assertEquals(5, values[0]);
+		assertEquals(70000, values[1]);
+		assertEquals(-1, values[2]);
+	}
+
+	public void testAgainstHashSet() {
+		Random rng = new Random(42);
+		HashSet<Integer> ref = new HashSet<Integer>();
+
+		/* dense values (bitmap chunks) and sparse ones (array chunks) */
+		for (int i=0; i<30000; i++) {
+			int value = rng.nextBoolean() ? rng.nextInt(10000) :
+				rng.nextInt(1 << 24);
+			assertEquals(ref.add(value), set.add(value));
+		}
+		assertEquals(ref.size(), set.size());
+
+		for (int i=0; i<10000; i++) {
+			int value = rng.nextInt(1 << 24);
+			assertEquals(ref.contains(value), set.contains(value));
+		}
+
+		int[] values = set.toArray();
+		assertEquals(ref.size(), values.length);
+		for (int i=0; i<values.length; i++) {
+			assertTrue(ref.contains(values[i]));
+			if (i > 0) {
+				assertTrue(values[i - 1] < values[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,233 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import routing.MessageBuffer;
+import routing.policy.BufferPolicy;
+import routing.policy.FewestCopiesPolicy;
+import routing.policy.HopCountPolicy;
+import routing.policy.LargestFirstPolicy;
+import routing.policy.LowestTtlPolicy;
+import routing.policy.YoungestFirstPolicy;
+import core.DTNHost;
+import core.Message;
+import core.SimClock;
+
+/**
+ * Tests for the indexed message buffer of routers
+ */
+public class MessageBufferTest extends TestCase {
+	private MessageBuffer buffer;
+	private SimClock sc;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		sc = SimClock.getInstance();
+		sc.setTime(0);
+		buffer = new MessageBuffer();
+	}
+
+	private Message newMessage(String id, int size, double time, int ttl) {
+		sc.setTime(time);
+		Message m = new Message(null, (DTNHost)null, id, size);
+		m.setTtl(ttl);
+		return m;
+	}
+
+	public void testAddAndRemove() {
+		Message m1 = newMessage("M1", 100, 0, 10);
+		Message m2 = newMessage("M2", 200, 1, 10);
+		buffer.add(m1);
+		buffer.add(m2);
+
+		assertEquals(2, buffer.size());
+		assertEquals(300, buffer.getOccupancy());
+		assertSame(m2, buffer.get("M2"));
+		assertTrue(buffer.contains("M1"));
+
+		/* replacing a message with the same ID */
+		Message m1b = newMessage("M1", 50, 2, 10);
+		assertSame(m1, buffer.add(m1b));
+		assertEquals(2, buffer.size());
+		assertEquals(250, buffer.getOccupancy());
+		assertSame(m2, buffer.getOldest(false));
+
+		assertSame(m2, buffer.remove("M2"));
+		assertNull(buffer.remove("M2"));
+		assertEquals(50, buffer.getOccupancy());
+		assertSame(m1b, buffer.getOldest(false));
+
+		buffer.remove("M1");
+		assertEquals(0, buffer.getOccupancy());
+		assertNull(buffer.getOldest(false));
+	}
+
+	public void testIterationOrder() {
+		HashMap<String, Message> map = new HashMap<String, Message>();
+		for (int i=0; i<50; i++) {
+			Message m = newMessage("M" + (i * 7 % 50), 10, i, 10);
+			map.put(m.getId(), m);
+			buffer.add(m);
+		}
+		for (int i=0; i<50; i+=3) {
+			map.remove("M" + i);
+			buffer.remove("M" + i);
+		}
+
+		assertEquals(map.size(), buffer.getMessages().size());
+		Iterator<Message> i = buffer.getMessages().iterator();
+		for (Message m : map.values()) {
+			assertSame(m, i.next());
+		}
+		assertFalse(i.hasNext());
+	}
+
+	public void testOldest() {
+		Message m1 = newMessage("M1", 10, 5, 10);
+		Message m2 = newMessage("M2", 10, 5, 10);
+		Message m3 = newMessage("M3", 10, 1, 10);
+		buffer.add(m1);
+		buffer.add(m2);
+		buffer.add(m3);
+
+		assertSame(m3, buffer.getOldest(false));
+
+		/* receive time of a buffered message is updated elsewhere */
+		m3.setReceiveTime(8);
+		assertSame(m1, buffer.getOldest(false));
+
+		buffer.markSending("M1");
+		assertSame(m1, buffer.getOldest(false));
+		assertSame(m2, buffer.getOldest(true));
+		buffer.markSending("M2");
+		assertSame(m3, buffer.getOldest(true));
+		buffer.markSending("M3");
+		assertNull(buffer.getOldest(true));
+
+		buffer.unmarkSending("M2");
+		assertSame(m2, buffer.getOldest(true));
+		assertEquals(2, buffer.getSendingMarks().length);
+		buffer.clearSending();
+		assertEquals(0, buffer.getSendingMarks().length);
+		assertSame(m1, buffer.getOldest(true));
+	}
+
+	public void testOldestTies() {
+		List<Message> added = new ArrayList<Message>();
+		for (int i=0; i<40; i++) {
+			Message m = newMessage("M" + (i * 13 % 40), 10, i % 4, 10);
+			buffer.add(m);
+			added.add(m);
+		}
+		assertSame(scanOldest(added, false), buffer.getOldest(false));
+
+		buffer.get("M12").setReceiveTime(3);
+		buffer.markSending(scanOldest(added, false).getId());
+		assertSame(scanOldest(added, true), buffer.getOldest(true));
+		assertSame(scanOldest(added, false), buffer.getOldest(false));
+
+		for (int i=0; i<40; i+=2) {
+			added.remove(buffer.remove("M" + i));
+			assertSame(scanOldest(added, true), buffer.getOldest(true));
+		}
+	}
+
+	/**
+	 * Finds the oldest message by going through the messages in the order
+	 * they were buffered
+	 */
+	private Message scanOldest(List<Message> added, boolean excludeSending) {
+		Message oldest = null;
+		for (Message m : added) {
+			if (excludeSending && buffer.isMarkedSending(m.getId())) {
+				continue;
+			}
+			if (oldest == null || oldest.getReceiveTime() > m.getReceiveTime()) {
+				oldest = m;
+			}
+		}
+		return oldest;
+	}
+
+	public void testExpired() {
+		Message m1 = newMessage("M1", 10, 0, 5);
+		Message m2 = newMessage("M2", 10, 0, 2);
+		Message m3 = newMessage("M3", 10, 0, Message.INFINITE_TTL);
+		Message m4 = newMessage("M4", 10, 60, 2);
+		buffer.add(m1);
+		buffer.add(m2);
+		buffer.add(m3);
+		buffer.add(m4);
+
+		sc.setTime(30);
+		assertEquals(0, buffer.getExpired().size());
+
+		sc.setTime(61);
+		List<Message> expired = buffer.getExpired();
+		assertEquals(1, expired.size());
+		assertSame(m2, expired.get(0));
+
+		sc.setTime(1000);
+		expired = buffer.getExpired();
+		assertEquals(3, expired.size());
+		assertSame(m2, expired.get(0));
+		assertSame(m4, expired.get(1));
+		assertSame(m1, expired.get(2));
+
+		buffer.remove("M4");
+		assertEquals(2, buffer.getExpired().size());
+	}
+
+	public void testPolicyOrder() {
+		BufferPolicy[] policies = {new YoungestFirstPolicy(),
+				new LargestFirstPolicy(), new LowestTtlPolicy(),
+				new FewestCopiesPolicy(), new HopCountPolicy()};
+
+		for (BufferPolicy p : policies) {
+			Random rng = new Random(42);
+			buffer = new MessageBuffer(p);
+			HashMap<String, Message> map = new HashMap<String, Message>();
+
+			for (int i=0; i<500; i++) {
+				Message m = newMessage("M" + rng.nextInt(200),
+						1 + rng.nextInt(10), i / 4, 1 + rng.nextInt(10));
+				m.setCopies(rng.nextInt(8) - 1);
+				for (int j=rng.nextInt(3); j>0; j--) {
+					m.addNodeOnPath(null);
+				}
+				buffer.add(m);
+				map.put(m.getId(), m);
+
+				if (rng.nextInt(3) == 0) {
+					Message first = buffer.getFirst(false);
+					buffer.remove(first.getId());
+					map.remove(first.getId());
+				}
+				if (rng.nextInt(5) == 0) {
+					Message any = map.values().iterator().next();
+					any.setCopies(rng.nextInt(8) - 1);
+					buffer.reindex(any.getId());
+				}
+
+				Message first = buffer.getFirst(false);
+				for (Message other : map.values()) {
+					assertTrue(p + " order", p.compare(first, other) <= 0);
+				}
+			}
+
+			Message first = buffer.getFirst(false);
+			buffer.markSending(first.getId());
+			assertNotSame(first, buffer.getFirst(true));
+		}
+	}
+}
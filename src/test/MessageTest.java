@@ -4,6 +4,9 @@
  */
 package test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import junit.framework.TestCase;
 
 import org.junit.Before;
@@ -60,5 +63,43 @@ public class MessageTest extends TestCase {
 		assertEquals(value2, msg.getProperty("bar"));
 	}
 
+	@Test
+	public void testRecipients() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost[] h = new DTNHost[5];
+		for (int i=0; i<h.length; i++) {
+			h[i] = utils.createHost();
+		}
+		List<DTNHost> to = new ArrayList<DTNHost>();
+		to.add(h[3]);
+		to.add(h[1]);
+		to.add(h[4]);
+		to.add(h[0]);
+		
+		Message m = new Message(h[0], to, "MC", 100);
+		assertEquals(to, m.getTo());
+		assertEquals(to.toString(), m.getTo().toString());
+		for (DTNHost host : h) {
+			assertEquals(to.contains(host), m.getTo().contains(host));
+		}
+		
+		/* removing a recipient doesn't change the replicates */
+		Message r = m.replicate();
+		r.removeRecipient(h[1]);
+		r.removeRecipient(h[2]);
+		assertFalse(r.getTo().contains(h[1]));
+		assertTrue(m.getTo().contains(h[1]));
+		assertEquals(3, r.getTo().size());
+		assertSame(h[4], r.getTo().get(1));
+		assertEquals(4, m.getTo().size());
+		
+		try {
+			m.getTo().remove(h[3]);
+			fail("Recipients were modifiable");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
 
 }
@@ -0,0 +1,150 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import core.Connection;
+import core.DTNHost;
+import core.Message;
+import core.Settings;
+
+/**
+ * Tests for remembering the messages refused as old during a contact and
+ * skipping them when offering messages again.
+ */
+public class RefusedMessagesTest extends AbstractRouterTest {
+
+	@Override
+	public void setUp() throws Exception {
+		ts.putSetting(MessageRouter.MSG_TTL_S, "300");
+		ts.putSetting(MessageRouter.B_SIZE_S, ""+BUFFER_SIZE);
+		setRouterProto(new RefusalRouter(ts));
+		super.setUp();
+	}
+
+	private Connection connect(DTNHost from, DTNHost to) {
+		from.connect(to);
+		return from.getConnection(to);
+	}
+
+	private boolean canSkip(DTNHost from, Connection con) {
+		return ((RefusalRouter)from.getRouter()).canSkipRefused(con);
+	}
+
+	public void testSmallerIdRebases() {
+		Connection con = connect(h0, h1);
+		Message m1 = new Message(h0, h2, msgId1, 1);
+		Message m2 = new Message(h0, h2, msgId2, 1);
+		Message m3 = new Message(h0, h2, msgId3, 1);
+
+		con.setRefused(h0, m3);
+		con.setRefused(h0, m1); // smaller than the first refused ID
+		assertTrue(con.isRefused(h0, m1));
+		assertFalse(con.isRefused(h0, m2));
+		assertTrue(con.isRefused(h0, m3));
+
+		/* a replicate has a different unique ID */
+		assertFalse(con.isRefused(h0, m1.replicate()));
+	}
+
+	public void testDirectionsAreSeparate() {
+		Connection con = connect(h0, h1);
+		Message m1 = new Message(h0, h2, msgId1, 1);
+		Message m2 = new Message(h1, h2, msgId2, 1);
+
+		con.setRefused(h0, m1);
+		con.setRefused(h1, m2);
+		assertTrue(con.isRefused(h0, m1));
+		assertFalse(con.isRefused(h1, m1));
+		assertTrue(con.isRefused(h1, m2));
+		assertFalse(con.isRefused(h0, m2));
+
+		/* a changed state forgets only the refusals of one direction */
+		con.validateRefusals(h0, 1);
+		assertFalse(con.isRefused(h0, m1));
+		assertTrue(con.isRefused(h1, m2));
+	}
+
+	public void testPeerRemovalClearsRefusals() {
+		Message m1 = new Message(h0, h2, msgId1, 1);
+		h0.createNewMessage(m1);
+		h1.createNewMessage(new Message(h0, h2, msgId1, 1));
+		h1.createNewMessage(new Message(h1, h2, msgId2, 1));
+		checkCreates(3);
+
+		Connection con = connect(h0, h1);
+		h0.update(true); // h1 refuses the message it already has
+		assertFalse(mc.next());
+		assertTrue(con.isRefused(h0, m1));
+		assertTrue(canSkip(h0, con));
+		assertTrue(con.isRefused(h0, m1));
+
+		/* a removal from the peer's buffer forgets the refusals */
+		h1.deleteMessage(msgId2, true);
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_DELETE, mc.getLastType());
+		canSkip(h0, con);
+		assertFalse(con.isRefused(h0, m1));
+
+		/* the message is offered again and accepted after the peer 
+		 * removes its copy */
+		h0.update(true);
+		assertTrue(con.isRefused(h0, m1));
+		h1.deleteMessage(msgId1, true);
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_DELETE, mc.getLastType());
+		h0.update(true);
+		checkTransferStart(h0, h1, msgId1);
+		assertFalse(mc.next());
+	}
+
+	public void testNoSkipWhilePeerTransfers() {
+		Message m1 = new Message(h0, h3, msgId1, 1);
+		h0.createNewMessage(m1);
+		h1.createNewMessage(new Message(h0, h3, msgId1, 1));
+		h2.createNewMessage(new Message(h2, h3, msgId2, 1));
+		checkCreates(3);
+
+		Connection con = connect(h0, h1);
+		h0.update(true);
+		assertTrue(con.isRefused(h0, m1));
+		assertTrue(canSkip(h0, con));
+
+		/* h1 starts receiving a message from h2 */
+		connect(h2, h1);
+		h2.update(true);
+		checkTransferStart(h2, h1, msgId2);
+		assertFalse(canSkip(h0, con));
+		assertTrue(con.isRefused(h0, m1)); // refusals are still valid
+
+		clock.advance(1);
+		h2.update(true); // finishes the transfer
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_RELAY, mc.getLastType());
+		assertTrue(canSkip(h0, con));
+	}
+
+	/** Epidemic router that exposes the refusal skipping check */
+	private static class RefusalRouter extends EpidemicRouter {
+		public RefusalRouter(Settings s) {
+			super(s);
+		}
+
+		protected RefusalRouter(RefusalRouter r) {
+			super(r);
+		}
+
+		@Override
+		public RefusalRouter replicate() {
+			return new RefusalRouter(this);
+		}
+
+		@Override
+		public boolean canSkipRefused(Connection con) {
+			return super.canSkipRefused(con);
+		}
+	}
+}
@@ -5,6 +5,10 @@
 package test;
 
 import input.ScheduledUpdatesQueue;
+
+import java.util.Random;
+import java.util.TreeSet;
+
 import junit.framework.TestCase;
 import core.SimClock;
 
@@ -107,4 +111,39 @@ public class ScheduledUpdatesQueueTest extends TestCase {
 		assertEquals(5.0, suq.nextEvent().getTime());
 		assertEquals(8.0, suq.nextEvent().getTime());
 	}
+	
+	public void testManyUpdates() {
+		Random rng = new Random(42);
+		TreeSet<Double> expected = new TreeSet<Double>();
+		
+		for (int i=0; i<2000; i++) {
+			double time = rng.nextInt(500) / 4.0; // lots of duplicates
+			suq.addUpdate(time);
+			expected.add(time);
+			
+			if (i % 5 == 0) { // the same time repeatedly
+				for (int j=0; j<3; j++) {
+					suq.addUpdate(time);
+				}
+			}
+			
+			if (i % 7 == 0) { // take some out in between
+				assertEquals(expected.pollFirst(), suq.nextEvent().getTime());
+				/* re-adding a time that was just taken out */
+				if (i % 3 == 0 && !expected.isEmpty()) {
+					double taken = suq.nextEvent().getTime();
+					assertEquals(expected.pollFirst(), taken);
+					suq.addUpdate(taken);
+					suq.addUpdate(taken);
+					expected.add(taken);
+				}
+			}
+		}
+		
+		for (double time : expected) {
+			assertEquals(time, suq.nextEventsTime());
+			assertEquals(time, suq.nextEvent().getTime());
+		}
+		assertEquals(MAX, suq.nextEvent().getTime());
+	}
 }
@@ -0,0 +1,133 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import routing.SendQueue;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.SimClock;
+
+/**
+ * Tests for the cached sending queue of routers
+ */
+public class SendQueueTest extends TestCase {
+	private SimClock sc;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		sc = SimClock.getInstance();
+		sc.setTime(0);
+	}
+
+	private MessageRouter newRouter(String queueMode) {
+		TestSettings ts = new TestSettings();
+		ts.putSetting(MessageRouter.SEND_QUEUE_MODE_S, queueMode);
+		MessageRouter r = new EpidemicRouter(ts);
+		r.init(null, new ArrayList<MessageListener>());
+		return r;
+	}
+
+	private void addMessages(MessageRouter r, int from, int to) {
+		for (int i=from; i<to; i++) {
+			sc.setTime(i / 3); // three messages per receive time
+			r.createNewMessage(new Message(null, (DTNHost)null, "M" + i, 10));
+		}
+	}
+
+	private Message find(MessageRouter r, String id) {
+		for (Message m : r.getMessageCollection()) {
+			if (m.getId().equals(id)) {
+				return m;
+			}
+		}
+		return null;
+	}
+
+	public void testRandomOrder() {
+		MessageRouter r = newRouter("1");
+		SendQueue q = new SendQueue(r, false);
+		addMessages(r, 0, 30);
+
+		for (int round=0; round<3; round++) {
+			sc.setTime(100 + round * 0.5);
+			List<Message> expected = 
+				new ArrayList<Message>(r.getMessageCollection());
+			Collections.shuffle(expected, new Random(SimClock.getIntTime()));
+			List<Message> queue = q.getQueue();
+			assertEquals(expected, queue);
+			assertSame(queue, q.getQueue());
+		}
+
+		r.deleteMessage("M5", false);
+		List<Message> expected = 
+			new ArrayList<Message>(r.getMessageCollection());
+		Collections.shuffle(expected, new Random(SimClock.getIntTime()));
+		assertEquals(expected, q.getQueue());
+	}
+
+	public void testFifoOrder() {
+		MessageRouter r = newRouter("2");
+		SendQueue q = new SendQueue(r, false);
+		addMessages(r, 0, 30);
+		checkFifo(r, q.getQueue());
+
+		/* receive time of a queued message changes: the cached order is
+		 * kept until the buffer changes */
+		List<Message> queue = q.getQueue();
+		sc.setTime(50);
+		find(r, "M4").setReceiveTime(50);
+		assertSame(queue, q.getQueue());
+
+		addMessages(r, 30, 40);
+		r.deleteMessage("M0", false);
+		checkFifo(r, q.getQueue());
+	}
+
+	private void checkFifo(MessageRouter r, List<Message> queue) {
+		List<Message> expected = 
+			new ArrayList<Message>(r.getMessageCollection());
+		Collections.sort(expected, new Comparator<Message>() {
+			public int compare(Message m1, Message m2) {
+				return Double.compare(m1.getReceiveTime(), 
+						m2.getReceiveTime());
+			}
+		});
+		assertEquals(expected, queue);
+	}
+
+	public void testFilter() {
+		MessageRouter r = newRouter("1");
+		final List<String> rejected = new ArrayList<String>();
+		SendQueue q = new SendQueue(r, true) {
+			@Override
+			protected boolean accept(Message m) {
+				return !rejected.contains(m.getId());
+			}
+		};
+		addMessages(r, 0, 10);
+		sc.setTime(20);
+		assertEquals(10, q.getQueue().size());
+
+		/* the filter result is cached until the buffer changes */
+		rejected.add("M3");
+		assertEquals(10, q.getQueue().size());
+
+		r.deleteMessage("M5", false);
+		List<Message> queue = q.getQueue();
+		assertEquals(8, queue.size());
+		assertFalse(queue.contains(find(r, "M3")));
+	}
+}
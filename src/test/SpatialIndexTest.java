@@ -0,0 +1,75 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import movement.map.SpatialIndex;
+import core.Coord;
+
+/**
+ * Tests for the nearest coordinate index
+ */
+public class SpatialIndexTest extends TestCase {
+
+	public void testEmpty() {
+		SpatialIndex index = new SpatialIndex(new ArrayList<Coord>());
+		assertEquals(-1, index.nearest(new Coord(1,1)));
+	}
+
+	public void testTiesReturnFirst() {
+		List<Coord> coords = new ArrayList<Coord>();
+		coords.add(new Coord(10,0));
+		coords.add(new Coord(0,0));
+		coords.add(new Coord(0,10));
+		coords.add(new Coord(0,0));
+		SpatialIndex index = new SpatialIndex(coords);
+
+		assertEquals(1, index.nearest(new Coord(0,0)));
+		assertEquals(0, index.nearest(new Coord(5,5))); // all equally near
+		assertEquals(0, index.nearest(new Coord(100,-3)));
+		assertEquals(2, index.nearest(new Coord(-50,40)));
+	}
+
+	public void testAgainstLinearScan() {
+		Random rng = new Random(3);
+		List<Coord> coords = new ArrayList<Coord>();
+		for (int i=0; i<2000; i++) {
+			if (rng.nextInt(4) == 0) { // clustered coordinates
+				coords.add(new Coord(rng.nextInt(20), rng.nextInt(20)));
+			}
+			else {
+				coords.add(new Coord(rng.nextDouble() * 5000,
+						rng.nextDouble() * 300));
+			}
+		}
+		SpatialIndex index = new SpatialIndex(coords);
+
+		for (int k=0; k<2000; k++) {
+			Coord c = new Coord(rng.nextDouble() * 6000 - 500,
+					rng.nextDouble() * 1000 - 500);
+			if (k % 2 == 0) {
+				c = coords.get(rng.nextInt(coords.size())).clone();
+			}
+			assertEquals(scan(coords, c), index.nearest(c));
+		}
+	}
+
+	private int scan(List<Coord> coords, Coord c) {
+		int nearest = -1;
+		double minDistance = Double.MAX_VALUE;
+		for (int i=0; i<coords.size(); i++) {
+			double distance = coords.get(i).distance(c);
+			if (distance < minDistance) {
+				minDistance = distance;
+				nearest = i;
+			}
+		}
+		return nearest;
+	}
+}
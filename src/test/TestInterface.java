@@ -69,7 +69,7 @@ public class TestInterface extends NetworkInterface {
 
 			if (!isWithinRange(anotherInterface)) {
 				disconnect(con,anotherInterface);
-				connections.remove(i);
+				removeConnection(i);
 			}
 			else {
 				i++;
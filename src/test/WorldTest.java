@@ -4,13 +4,27 @@
  */
 package test;
 
+import input.ConnectionEvent;
 import input.EventQueue;
+import input.ExternalEvent;
+import input.MessageCreateEvent;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import junit.framework.TestCase;
+import report.MessageStatsReport;
+import report.Report;
+import routing.EpidemicRouter;
+import routing.MessageRouter;
 import core.DTNHost;
+import core.MessageListener;
 import core.ModuleCommunicationBus;
 import core.NetworkInterface;
 import core.SimClock;
@@ -99,6 +113,219 @@ public class WorldTest extends TestCase {
 	}
 	
 
+	public void testBatchEventUpdatesSkipIdleHosts() {
+		List<String> normal = runEvents(false);
+		List<String> batched = runEvents(true);
+
+		/* the interval end updates are done in the same order */
+		assertEquals(intervalUpdates(normal), intervalUpdates(batched));
+		/* after an event only the affected hosts are updated (the others are
+		 * idle), in the same order as when all hosts are updated */
+		List<String> affected = Arrays.asList("0.15:3", "0.15:7", "0.25:1", 
+				"0.35:2", "0.35:5", "0.55:9");
+		List<String> expected = new ArrayList<String>();
+		for (String u : eventUpdates(normal)) {
+			if (affected.contains(u)) {
+				expected.add(u);
+			}
+		}
+		assertEquals(affected.size(), expected.size());
+		assertEquals(expected, eventUpdates(batched));
+		assertEquals(4 * testHosts.size(), eventUpdates(normal).size());
+	}
+	
+	public void testBatchEventUpdatesKeepResults() throws Exception {
+		String normal = runMessages(false);
+		assertFalse(normal.contains("relayed: 0\n"));
+		assertEquals(normal, runMessages(true));
+	}
+	
+	/**
+	 * Runs a seeded set of connection and message creation events with 
+	 * Epidemic routing and returns the message stats report's output.
+	 * The events happen between the update intervals' ends, so transfers
+	 * finish and messages expire at the events' times.
+	 * @param batch Value for the batch event updates setting
+	 * @return The report's output
+	 */
+	private String runMessages(boolean batch) throws Exception {
+		SimClock.reset();
+		DTNHost.reset();
+		NetworkInterface.reset();
+		File outFile = File.createTempFile("worldtest", ".tmp");
+		outFile.deleteOnExit();
+		
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.SETTINGS_NS + "." + World.BATCH_EVENT_UPDATES_S, 
+				batch ? "true" : "false");
+		ts.putSetting("MessageStatsReport." + Report.OUTPUT_SETTING, 
+				outFile.getAbsolutePath());
+		ts.putSetting(MessageRouter.MSG_TTL_S, "1");
+		ts.putSetting(MessageRouter.B_SIZE_S, "40");
+		
+		MessageStatsReport report = new MessageStatsReport();
+		List<MessageListener> ml = new ArrayList<MessageListener>();
+		ml.add(report);
+		TestUtils utils = new TestUtils(null, ml, ts);
+		utils.setMessageRouterProto(new EpidemicRouter(ts));
+		utils.setTransmitSpeed(4);
+		int nrofHosts = 20;
+		for (int i=0; i<nrofHosts; i++) {
+			utils.createHost();
+		}
+		
+		/* short contacts, so most of the hosts are idle most of the time */
+		Random rng = new Random(42);
+		double[][] upUntil = new double[nrofHosts][nrofHosts];
+		List<ExternalEvent> events = new ArrayList<ExternalEvent>();
+		double time = 0;
+		for (int i=0; i<400; i++) {
+			time += 0.05 + rng.nextDouble() * 0.6;
+			int from = rng.nextInt(nrofHosts);
+			int to = (from + 1 + rng.nextInt(nrofHosts - 1)) % nrofHosts;
+			int a = Math.min(from, to);
+			int b = Math.max(from, to);
+			if (rng.nextInt(5) < 2) {
+				events.add(new MessageCreateEvent(from, to, "M" + i, 
+						5 + rng.nextInt(10), 0, time));
+			}
+			else if (upUntil[a][b] < time) {
+				upUntil[a][b] = time + 1 + rng.nextDouble() * 4;
+				events.add(new ConnectionEvent(a, b, null, true, time));
+				events.add(new ConnectionEvent(a, b, null, false, 
+						upUntil[a][b]));
+			}
+		}
+		Collections.sort(events);
+		List<EventQueue> queues = new ArrayList<EventQueue>();
+		queues.add(new ListQueue(events));
+		
+		World w = new World(utils.getAllHosts(), worldSizeX, worldSizeY, 
+				1.0, new ArrayList<UpdateListener>(), true, queues);
+		while (SimClock.getTime() < time + 100) {
+			w.update();
+		}
+		report.done();
+		
+		StringBuilder output = new StringBuilder();
+		BufferedReader reader = new BufferedReader(new FileReader(outFile));
+		for (String line = reader.readLine(); line != null; 
+				line = reader.readLine()) {
+			output.append(line).append('\n');
+		}
+		reader.close();
+		return output.toString();
+	}
+	
+	/**
+	 * Runs a seeded set of events and returns the updates the hosts got as
+	 * "time:address" strings in the order the hosts were updated
+	 * @param batch Value for the batch event updates setting
+	 * @return The updates
+	 */
+	private List<String> runEvents(boolean batch) {
+		SimClock.reset();
+		DTNHost.reset();
+		final List<String> updates = new ArrayList<String>();
+		this.testHosts = new ArrayList<TestDTNHost>();
+		for (int i=0; i<10; i++) {
+			NetworkInterface ni = new TestInterface(1.0,1);
+			List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+			li.add(ni);
+			ModuleCommunicationBus comBus = new ModuleCommunicationBus();
+			comBus.addProperty(NetworkInterface.RANGE_ID, 1.0);
+			comBus.addProperty(NetworkInterface.SPEED_ID, 1);
+			
+			this.testHosts.add(new TestDTNHost(li, comBus) {
+				@Override
+				public void update(boolean up) {
+					super.update(up);
+					updates.add(SimClock.getTime() + ":" + getAddress());
+				}
+			});
+		}
+		
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.SETTINGS_NS + "." + World.BATCH_EVENT_UPDATES_S, 
+				batch ? "true" : "false");
+		
+		List<ExternalEvent> events = new ArrayList<ExternalEvent>();
+		events.add(new AffectingEvent(0.15, 3, 7));
+		events.add(new AffectingEvent(0.25, 1));
+		events.add(new AffectingEvent(0.35, 2, 5, 2));
+		events.add(new AffectingEvent(0.55, 9));
+		this.eQueues = new ArrayList<EventQueue>();
+		this.eQueues.add(new ListQueue(events));
+		
+		TestScenario scen = new TestScenario();
+		World w = new World(scen.getHosts(), scen.getWorldSizeX(), 
+				scen.getWorldSizeY(), scen.getUpdateInterval(), 
+				scen.getUpdateListeners(), scen.simulateConnections(), 
+				scen.getExternalEvents());
+		for (int i=0; i<30; i++) {
+			w.update();
+		}
+		return updates;
+	}
+	
+	private List<String> intervalUpdates(List<String> updates) {
+		List<String> result = new ArrayList<String>();
+		for (String u : updates) {
+			if (!isEventTime(u)) {
+				result.add(u);
+			}
+		}
+		return result;
+	}
+
+	private List<String> eventUpdates(List<String> updates) {
+		List<String> result = new ArrayList<String>();
+		for (String u : updates) {
+			if (isEventTime(u)) {
+				result.add(u);
+			}
+		}
+		return result;
+	}
+	
+	private boolean isEventTime(String update) {
+		return update.matches("0\\.[1-5]5:.*");
+	}
+
+	/** External event that tells which hosts it concerns */
+	private static class AffectingEvent extends ExternalEvent {
+		private static final long serialVersionUID = 1L;
+		private int[] addresses;
+		
+		public AffectingEvent(double time, int... addresses) {
+			super(time);
+			this.addresses = addresses;
+		}
+		
+		@Override
+		public int[] getAffectedHosts() {
+			return this.addresses;
+		}
+	}
+	
+	/** Event queue of a list of events */
+	private static class ListQueue implements EventQueue {
+		private List<ExternalEvent> events;
+		
+		public ListQueue(List<ExternalEvent> events) {
+			this.events = events;
+		}
+		
+		public ExternalEvent nextEvent() {
+			return events.remove(0);
+		}
+		
+		public double nextEventsTime() {
+			return events.isEmpty() ? Double.MAX_VALUE : 
+				events.get(0).getTime();
+		}
+	}
+
 	/** Dummy scenario for providing test values for the World */ 
 	private class TestScenario extends core.SimScenario {
 		public TestScenario() {	}
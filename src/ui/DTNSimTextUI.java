@@ -12,6 +12,7 @@ import core.SimClock;
 public class DTNSimTextUI extends DTNSimUI {
 	private long lastUpdateRt;	// real time of last ui update
 	private long startTime; // simulation start time
+	private long lastEvents; // nrof processed events at last ui update
 	/** How often the UI view is updated (milliseconds) */
 	public static final long UI_UP_INTERVAL = 60000;
 
@@ -59,11 +60,15 @@ public class DTNSimTextUI extends DTNSimUI {
 		if (forced || (diff > UI_UP_INTERVAL)) {
 			// simulated seconds/second calc
 			double ssps = ((SimClock.getTime() - lastUpdate)*1000) / diff;
-			print(String.format("%.1f %d: %.2f 1/s", dur, 
-					SimClock.getIntTime(),ssps));
+			// processed events/second calc
+			long events = world.getNrofEvents();
+			double eps = ((events - lastEvents)*1000.0) / diff;
+			print(String.format("%.1f %d: %.2f 1/s, %.1f events/s", dur, 
+					SimClock.getIntTime(),ssps, eps));
 			
 			this.lastUpdateRt = System.currentTimeMillis();
 			this.lastUpdate = SimClock.getTime();
+			this.lastEvents = events;
 		}		
 	}
 	
@@ -9,6 +9,7 @@ import java.util.Vector;
 import report.Report;
 import core.ApplicationListener;
 import core.ConnectionListener;
+import core.MessageCopyListener;
 import core.MessageListener;
 import core.MovementListener;
 import core.Settings;
@@ -130,6 +131,7 @@ public abstract class DTNSimUI {
 		for (Report r : this.reports) {
 			r.done();
 		}
+		this.world.done();
 	}
 	
 	/**
@@ -152,6 +154,9 @@ public abstract class DTNSimUI {
 		if (r instanceof ApplicationListener) {
 			scen.addApplicationListener((ApplicationListener)r);
 		}
+		if (r instanceof MessageCopyListener) {
+			scen.addCopyListener((MessageCopyListener)r);
+		}
 
 		this.reports.add(r);
 	}